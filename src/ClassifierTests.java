@@ -1,7 +1,14 @@
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
 
 /**
  * The ClassifierTests class is the test suite which is used to try different
@@ -34,6 +41,398 @@ public class ClassifierTests {
 		//singleKWeightedBestSubset(3);		// 78%
 		bestKWeightedBestSubset();		// 80%
 
+		//searchHyperparameters(data, 25);
+		//reduceTrainingSet(data, 3);
+		//projectData(data, 3, 0.9);
+		//lshClassify(data, 3, DistanceMetric.EUCLIDEAN);
+		//cachedPredictions(data, 3);
+		//shardedClassify(data, 3, 9001, 9002, 9003);
+		//streamClassify(reader, "docs/diveData.txt", 3);
+		//measureAllocation(data, 3);
+		//compareKernels(data, 3);
+		//adaptiveK(data, 3, 25, 0.6);
+		//regression(data, 5);
+		//missingValues(data, 3, 0.2);
+
+	}
+
+	/**
+	 * Get the best classification by searching K values up to maxK, distance
+	 * metrics, weighting and every subset of variables with successive halving
+	 * instead of trying every combination on the full data set
+	 */
+	private static void searchHyperparameters(
+			ArrayList<DataPoint> data, int maxK) {
+
+		HyperparameterSearch search =
+				new HyperparameterSearch(data, "docs/search.log");
+		ArrayList<HyperparameterSearch.Candidate> candidates =
+				HyperparameterSearch.createCandidates(
+						data.get(0).getNumVariables(), maxK);
+
+		try {
+			HyperparameterSearch.Candidate best = search.search(candidates);
+			System.out.println("\nBest configuration overall " + best + " ["
+					+ Math.round(best.getScore() * 100) + "%]");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	/**
+	 * Compare the accuracy and size of the training set after condensing,
+	 * editing, editing then condensing and hill climbing against the full set
+	 */
+	private static void reduceTrainingSet(ArrayList<DataPoint> data, int k) {
+
+		PrototypeSelector selector = new PrototypeSelector(data);
+
+		ArrayList<DataPoint> condensed = selector.condense();
+		ArrayList<DataPoint> edited = selector.edit(k);
+		ArrayList<DataPoint> both =
+				new PrototypeSelector(edited).condense();
+		ArrayList<DataPoint> climbed =
+				selector.hillClimb(data.size() / 5, 500, 1);
+
+		System.out.print("Condensed: ");
+		selector.report(condensed, k);
+		System.out.print("Edited: ");
+		selector.report(edited, k);
+		System.out.print("Edited and condensed: ");
+		selector.report(both, k);
+		System.out.print("Hill climbing: ");
+		selector.report(climbed, k);
+
+	}
+
+	/**
+	 * Compare the accuracy for a single K value after projecting the data onto
+	 * the principal components explaining the given fraction of variance and
+	 * onto the same number of random directions
+	 */
+	private static void projectData(ArrayList<DataPoint> data, int k,
+			double varianceTarget) {
+
+		DataProjector projector =
+				new DataProjector(data.get(0).getNumVariables());
+
+		projector.fitPCAVariance(data, varianceTarget);
+		int dims = projector.getNumComponents();
+		System.out.print("PCA " + dims + " dimensions ["
+				+ Math.round(projector.getExplainedVarianceRatio() * 100)
+				+ "% variance] ");
+		singleK(projector.transform(data), k);
+
+		projector.fitRandomProjection(dims, 1);
+		System.out.print("Random projection " + dims + " dimensions ");
+		singleK(projector.transform(data), k);
+
+	}
+
+	/**
+	 * Get the classification for a single K value when neighbours are only
+	 * searched for among the candidates from a locality-sensitive hash index,
+	 * along with the candidate set size and recall of the index
+	 */
+	private static void lshClassify(ArrayList<DataPoint> data, int k,
+			DistanceMetric metric) {
+
+		LSHIndex index = new LSHIndex(data.get(0).getNumVariables(),
+				metric, 8, 4, 4.0, 1);
+		index.insertAll(data);
+
+		SimpleKNNClassifier knn = new SimpleKNNClassifier(data);
+		knn.setDistanceMetric(metric);
+		knn.setCandidateIndex(index);
+		double score = knn.classify(k);
+
+		System.out.println("[K = " + k + "] [" + (int) score + "/"
+				+ data.size() + "] [" + Math.round(score / data.size() * 100)
+				+ "%] [" + Math.round(index.getAverageCandidates())
+				+ " candidates] [" + Math.round(index.measureRecall(data, k)
+				* 100) + "% recall]");
+
+	}
+
+	/**
+	 * Predict a stream of repeated and slightly perturbed queries through a
+	 * prediction cache with each eviction policy and report the hit rate
+	 */
+	private static void cachedPredictions(ArrayList<DataPoint> data, int k) {
+
+		for (PredictionCache.EvictionPolicy policy
+				: PredictionCache.EvictionPolicy.values()) {
+
+			SimpleKNNClassifier knn = new SimpleKNNClassifier(data);
+			PredictionCache cache =
+					new PredictionCache(knn, data.size() / 4, 0.01, policy);
+			Random random = new Random(1);
+
+			for (int q = 0; q < data.size() * 10; q++) {
+
+				// most queries go to a few popular points
+				int i = (int) (data.size()
+						* Math.pow(random.nextDouble(), 4));
+				ArrayList<Double> values = data.get(i).getVariables();
+				Double[] query = new Double[values.size()];
+				for (int v = 0; v < query.length; v++) {
+					query[v] = values.get(v) + random.nextGaussian() * 0.001;
+				}
+
+				cache.predict(new DataPoint(query, -1), k);
+			}
+
+			System.out.println(policy + " [" + cache.getHits() + " hits] ["
+					+ cache.getMisses() + " misses] ["
+					+ Math.round(cache.getHitRate() * 100) + "%]");
+		}
+
+	}
+
+	/**
+	 * Get the classification for a single K value with the data split across
+	 * shard servers already running on the given local ports
+	 */
+	private static void shardedClassify(ArrayList<DataPoint> data, int k,
+			int... ports) {
+
+		ArrayList<InetSocketAddress> addresses =
+				new ArrayList<InetSocketAddress>();
+		for (int port : ports) {
+			addresses.add(new InetSocketAddress("localhost", port));
+		}
+
+		ShardCoordinator coordinator = new ShardCoordinator(addresses, false);
+		try {
+			coordinator.connect();
+			coordinator.distribute(data);
+			double score = coordinator.classify(data, k);
+
+			System.out.println("[K = " + k + "] [" + ports.length
+					+ " shards] [" + (int) score + "/" + data.size() + "] ["
+					+ Math.round(score / data.size() * 100) + "%]");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			coordinator.close();
+		}
+
+	}
+
+	/**
+	 * Classify every record of a file as a stream, scaled like the training
+	 * data, and count the predictions for each category
+	 */
+	private static void streamClassify(DataReader reader, String path,
+			int k) {
+
+		SimpleKNNClassifier knn = new SimpleKNNClassifier(reader.getDataList());
+		StreamingClassifier stream =
+				new StreamingClassifier(knn, reader.getScaler(), k, 64, 4);
+		final HashMap<String, Integer> counts = new HashMap<String, Integer>();
+
+		try {
+			StreamingClassifier.readLines(new FileInputStream(path), true)
+					.subscribe(stream);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		// the subscriber asks for more only once it has counted a point
+		final CountDownLatch done = new CountDownLatch(1);
+		stream.subscribe(new Flow.Subscriber<DataPoint>() {
+
+			private Flow.Subscription subscription;
+
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(1);
+			}
+
+			@Override
+			public void onNext(DataPoint point) {
+				Integer count = counts.get(point.toString());
+				counts.put(point.toString(), count == null ? 1 : count + 1);
+				subscription.request(1);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				throwable.printStackTrace();
+				done.countDown();
+			}
+
+			@Override
+			public void onComplete() {
+				done.countDown();
+			}
+
+		});
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		System.out.println("[" + stream.getNumRecords() + " records] ["
+				+ stream.getNumSkipped() + " skipped] " + counts);
+
+	}
+
+	/**
+	 * Measure the bytes allocated per prediction by both classifiers once
+	 * their buffers have been set up, which should be zero
+	 */
+	private static void measureAllocation(ArrayList<DataPoint> data, int k) {
+
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean)
+				ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		KNNClassifier[] classifiers = {
+				new SimpleKNNClassifier(data),
+				new WeightedKNNClassifier(data) };
+
+		for (KNNClassifier knn : classifiers) {
+
+			knn.classify(k); // warm up the buffers and the JIT
+
+			long before = threads.getThreadAllocatedBytes(thread);
+			knn.classify(k);
+			long after = threads.getThreadAllocatedBytes(thread);
+
+			System.out.println(knn.getClass().getSimpleName() + " [K = " + k
+					+ "] [" + (after - before) / data.size() + " B/op]");
+		}
+
+	}
+
+	/**
+	 * Get the accuracy for a single K value with each voting kernel
+	 */
+	private static void compareKernels(ArrayList<DataPoint> data, int k) {
+
+		WeightedKNNClassifier knn = new WeightedKNNClassifier(data);
+
+		for (VotingKernel kernel : VotingKernel.values()) {
+			knn.setVotingKernel(kernel);
+			double score = knn.classify(k);
+
+			System.out.println(kernel + " [K = " + k + "] [" + (int) score
+					+ "/" + data.size() + "] ["
+					+ Math.round(score / data.size() * 100) + "%]");
+		}
+
+	}
+
+	/**
+	 * Get the accuracy when each query stops counting neighbours once its
+	 * vote is decided, and when each query uses the K learned for its region,
+	 * compared with always using maxK
+	 */
+	private static void adaptiveK(ArrayList<DataPoint> data, int minK,
+			int maxK, double margin) {
+
+		SimpleKNNClassifier knn = new SimpleKNNClassifier(data);
+		knn.learnLocalK(maxK);
+
+		double adaptiveScore = 0;
+		double localScore = 0;
+		for (DataPoint point : data) {
+			if (point.toString().equals(
+					knn.predictAdaptive(point, minK, maxK, margin))) {
+				adaptiveScore++;
+			}
+			if (point.toString().equals(knn.predictLocalK(point))) {
+				localScore++;
+			}
+		}
+
+		int dataSize = data.size();
+		System.out.println("[K = " + maxK + "] ["
+				+ Math.round(knn.classify(maxK) / dataSize * 100) + "%]");
+		System.out.println("Adaptive [average K = "
+				+ Math.round(knn.getAverageAdaptiveK() * 10) / 10.0 + "] ["
+				+ Math.round(adaptiveScore / dataSize * 100) + "%]");
+		System.out.println("Local K [" + Math.round(localScore / dataSize * 100)
+				+ "%]");
+
+	}
+
+	/**
+	 * Get the leave-one-out errors of predicting the numeric targets of the
+	 * data with each way of combining the neighbours' targets
+	 */
+	private static void regression(ArrayList<DataPoint> data, int k) {
+
+		int numThreads = Runtime.getRuntime().availableProcessors();
+
+		for (KNNRegressor.Aggregation aggregation
+				: KNNRegressor.Aggregation.values()) {
+
+			KNNRegressor knn = new KNNRegressor(data, aggregation);
+			double[] errors = knn.evaluate(k, numThreads);
+
+			System.out.println(aggregation + " [K = " + k + "] [RMSE "
+					+ errors[0] + "] [MAE " + errors[1] + "]");
+		}
+
+	}
+
+	/**
+	 * Hide a fraction of the values at random and compare the accuracy of
+	 * measuring distances over the values both points have with filling the
+	 * hidden values with the mean
+	 */
+	private static void missingValues(ArrayList<DataPoint> data, int k,
+			double fraction) {
+
+		Random random = new Random(1);
+		ArrayList<DataPoint> missing = new ArrayList<DataPoint>();
+		ArrayList<DataPoint> imputed = new ArrayList<DataPoint>();
+
+		// the mean of each variable, which isn't 0 for sparse variables
+		int numVariables = data.get(0).getNumVariables();
+		double[] means = new double[numVariables];
+		for (DataPoint point : data) {
+			for (int v = 0; v < numVariables; v++) {
+				means[v] += point.getValue(v) / data.size();
+			}
+		}
+
+		for (DataPoint point : data) {
+
+			ArrayList<Double> values = point.getVariables();
+			Double[] array = values.toArray(new Double[values.size()]);
+			DataPoint a = new DataPoint(array, point.getIndex());
+			DataPoint b = new DataPoint(array, point.getIndex());
+			a.setCategory(point.toString());
+			b.setCategory(point.toString());
+
+			for (int v = 0; v < values.size(); v++) {
+				if (random.nextDouble() < fraction) {
+					a.setMissing(v, means[v]);
+					b.setValue(v, means[v]);
+				}
+			}
+			missing.add(a);
+			imputed.add(b);
+		}
+
+		int dataSize = data.size();
+		double sharedScore = new SimpleKNNClassifier(missing).classify(k);
+		double imputedScore = new SimpleKNNClassifier(imputed).classify(k);
+
+		System.out.println("Shared values [K = " + k + "] ["
+				+ Math.round(sharedScore / dataSize * 100) + "%]");
+		System.out.println("Mean imputed [K = " + k + "] ["
+				+ Math.round(imputedScore / dataSize * 100) + "%]");
+
 	}
 
 	/**
@@ -1,12 +1,19 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  *	DataPoint class allows creating an object for each data point
  */
 public class DataPoint implements Comparable<DataPoint> {
 
-	private ArrayList<Double> variables;
+	private ArrayList<Double> variables; // null when stored sparse
+	private int numVariables;
+	private int[] columns;
+	private double[] nonZeros;
 	private String category;
+	private double target;
+	private BitSet missing;
 	private double relativeDistance;
 	private int index;
 
@@ -25,8 +32,29 @@ public class DataPoint implements Comparable<DataPoint> {
 		for (int i = 0; i < variables.length; i++) { // load the values
 			this.variables.add(variables[i]);
 		}
+		numVariables = variables.length;
 
 		relativeDistance = 0;
+		target = Double.NaN;
+	}
+
+	/**
+	 * Constructor for a sparse point, which stores only its non-zero values
+	 * @param numVariables The number of dimensions
+	 * @param columns The dimensions of the non-zero values, in order
+	 * @param nonZeros The non-zero values
+	 * @param index The integer position in the data list
+	 */
+	public DataPoint(int numVariables, int[] columns, double[] nonZeros,
+			int index) {
+
+		this.index = index;
+		this.numVariables = numVariables;
+		this.columns = columns;
+		this.nonZeros = nonZeros;
+
+		relativeDistance = 0;
+		target = Double.NaN;
 	}
 
 	/**
@@ -46,22 +74,151 @@ public class DataPoint implements Comparable<DataPoint> {
 	}
 
 	/**
-	 * Gets the list of variables for the data point
+	 * Stores the continuous target of the data point for regression
+	 * @param target The target value
+	 */
+	public void setTarget(double target) {
+		this.target = target;
+	}
+
+	/**
+	 * Returns the continuous target of the data point
+	 * @return the target, or NaN if the point has none
+	 */
+	public double getTarget() {
+		return target;
+	}
+
+	/**
+	 * Gets the list of variables for the data point. For a sparse point this
+	 * is a new list each time, so changing it doesn't change the point
 	 * @return an ArrayList of variable values
 	 */
 	public ArrayList<Double> getVariables() {
-		return variables;
+
+		if (variables != null) {
+			return variables;
+		}
+
+		ArrayList<Double> values = new ArrayList<Double>(numVariables);
+		for (int v = 0; v < numVariables; v++) {
+			values.add(0.0);
+		}
+		for (int i = 0; i < columns.length; i++) {
+			values.set(columns[i], nonZeros[i]);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Returns the number of variables of the data point
+	 * @return the number of dimensions
+	 */
+	public int getNumVariables() {
+		return numVariables;
+	}
+
+	/**
+	 * Returns the value of a particular variable
+	 * @param index The variable's index
+	 * @return the value
+	 */
+	public double getValue(int index) {
+
+		if (variables != null) {
+			return variables.get(index);
+		}
+
+		int i = Arrays.binarySearch(columns, index);
+		return i >= 0 ? nonZeros[i] : 0.0;
 	}
 
 	/**
-	 * Sets the value for a particular variable
+	 * Copies the values of the point into an array, without allocating
+	 * @param values The array to fill, with at least one entry per variable
+	 */
+	public void getValues(double[] values) {
+
+		if (variables != null) {
+			for (int v = 0; v < numVariables; v++) {
+				values[v] = variables.get(v);
+			}
+			return;
+		}
+
+		Arrays.fill(values, 0, numVariables, 0.0);
+		for (int i = 0; i < columns.length; i++) {
+			values[columns[i]] = nonZeros[i];
+		}
+	}
+
+	/**
+	 * Returns whether only the non-zero values of the point are stored
+	 * @return true if the point is sparse
+	 */
+	public boolean isSparse() {
+		return variables == null;
+	}
+
+	/**
+	 * Returns the dimensions of the non-zero values of a sparse point
+	 */
+	int[] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the non-zero values of a sparse point
+	 */
+	double[] getNonZeros() {
+		return nonZeros;
+	}
+
+	/**
+	 * Sets the value for a particular variable. A sparse point is stored
+	 * densely from then on
 	 * @param The index the variables index
 	 * @param The value the value to set
 	 */
 	public void setValue(int index, double value) {
+		makeDense();
+		variables.set(index, value);
+	}
+
+	/**
+	 * Marks a variable as missing. The given value, such as the mean of the
+	 * variable, is stored in its place for code that doesn't check for
+	 * missing values
+	 * @param index The variable's index
+	 * @param value The value to store in its place
+	 */
+	public void setMissing(int index, double value) {
+		makeDense();
+		if (missing == null) {
+			missing = new BitSet(variables.size());
+		}
+		missing.set(index);
 		variables.set(index, value);
 	}
 
+	/**
+	 * Returns whether a variable is missing
+	 * @param index The variable's index
+	 * @return true if the value is missing
+	 */
+	public boolean isMissing(int index) {
+		return missing != null && missing.get(index);
+	}
+
+	/**
+	 * Returns whether any variable is missing
+	 * @return true if the point has missing values
+	 */
+	public boolean hasMissing() {
+		return missing != null && !missing.isEmpty();
+	}
+
 	/**
 	 * Sets the relative distance from this point to another. This changes
 	 * during scaling
@@ -84,12 +241,23 @@ public class DataPoint implements Comparable<DataPoint> {
 	 */
 	public void printDataPoint() {
 		System.out.println();
-		for (Double v : variables) {
+		for (Double v : getVariables()) {
 			System.out.print(v + " ");
 		}
 		System.out.print(category);
 	}
 
+	/**
+	 * Stores a sparse point as a full list of values
+	 */
+	private void makeDense() {
+		if (variables == null) {
+			variables = getVariables();
+			columns = null;
+			nonZeros = null;
+		}
+	}
+
 	@Override
 	public int compareTo(DataPoint point) {
 		double t = this.getRelativeDistance();
@@ -0,0 +1,284 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * The DataProjector class reduces the number of dimensions of scaled data
+ * points before the neighbour search. It can be fitted with principal
+ * component analysis, found by power iteration on the covariance matrix, or
+ * with a Johnson-Lindenstrauss random projection. The same projection is
+ * then applied to the training points and to every query point
+ */
+public class DataProjector {
+
+	private int numVariables;
+	private int numComponents;
+	private double[][] components;
+	private double[] means;
+	private double[] variances;
+	private double totalVariance;
+
+	/**
+	 * Constructor that takes in the number of dimensions of the scaled data
+	 * @param num The number of dimensions
+	 */
+	public DataProjector(int num) {
+		numVariables = num;
+	}
+
+	/**
+	 * Fits the principal components that explain at least the given
+	 * fraction of the variance
+	 * @param dataList The list of scaled data points
+	 * @param varianceTarget The fraction of variance to keep, from 0 to 1
+	 */
+	public void fitPCAVariance(ArrayList<DataPoint> dataList,
+			double varianceTarget) {
+		fitPCA(dataList, numVariables, varianceTarget);
+	}
+
+	/**
+	 * Fits the given number of principal components
+	 * @param dataList The list of scaled data points
+	 * @param dims The number of dimensions to project onto
+	 */
+	public void fitPCAComponents(ArrayList<DataPoint> dataList, int dims) {
+		fitPCA(dataList, dims, 1.0);
+	}
+
+	/**
+	 * Fits a random Gaussian projection onto the given number of dimensions.
+	 * Distances are preserved approximately, without looking at the data
+	 * @param dims The number of dimensions to project onto
+	 * @param seed The random seed
+	 */
+	public void fitRandomProjection(int dims, long seed) {
+
+		Random random = new Random(seed);
+		numComponents = dims;
+		components = new double[dims][numVariables];
+		means = new double[numVariables];
+		variances = null;
+
+		// entries from N(0, 1 / dims) keep the expected squared distance
+		double scale = 1 / Math.sqrt(dims);
+		for (int c = 0; c < dims; c++) {
+			for (int v = 0; v < numVariables; v++) {
+				components[c][v] = random.nextGaussian() * scale;
+			}
+		}
+
+	}
+
+	/**
+	 * Returns the fraction of the variance explained by the fitted principal
+	 * components
+	 * @return the explained variance ratio, or NaN for a random projection
+	 */
+	public double getExplainedVarianceRatio() {
+
+		if (variances == null) {
+			return Double.NaN;
+		}
+
+		double explained = 0.0;
+		for (int c = 0; c < numComponents; c++) {
+			explained += variances[c];
+		}
+
+		return explained / totalVariance;
+	}
+
+	/**
+	 * Returns the number of dimensions after the projection
+	 * @return the number of components
+	 */
+	public int getNumComponents() {
+		return numComponents;
+	}
+
+	/**
+	 * Projects a list of data points
+	 * @param dataList The list of scaled data points
+	 * @return a new list of projected data points
+	 */
+	public ArrayList<DataPoint> transform(ArrayList<DataPoint> dataList) {
+
+		ArrayList<DataPoint> projected =
+				new ArrayList<DataPoint>(dataList.size());
+		for (DataPoint point : dataList) {
+			projected.add(transform(point));
+		}
+
+		return projected;
+	}
+
+	/**
+	 * Projects a single data point, keeping its index, category and target
+	 * @param point The scaled data point
+	 * @return the projected data point
+	 */
+	public DataPoint transform(DataPoint point) {
+
+		ArrayList<Double> values = point.getVariables();
+		Double[] projected = new Double[numComponents];
+
+		for (int c = 0; c < numComponents; c++) {
+			double sum = 0.0;
+			for (int v = 0; v < numVariables; v++) {
+				sum += components[c][v] * (values.get(v) - means[v]);
+			}
+			projected[c] = sum;
+		}
+
+		DataPoint projectedPoint = new DataPoint(projected, point.getIndex());
+		projectedPoint.setCategory(point.toString());
+		projectedPoint.setTarget(point.getTarget());
+
+		return projectedPoint;
+	}
+
+	/**
+	 * Finds the principal components one at a time with power iteration,
+	 * removing each one from the covariance matrix before finding the next,
+	 * until either limit is reached
+	 */
+	private void fitPCA(ArrayList<DataPoint> dataList, int dims,
+			double varianceTarget) {
+
+		double[][] covariance = getCovariance(dataList);
+		totalVariance = 0.0;
+		for (int v = 0; v < numVariables; v++) {
+			totalVariance += covariance[v][v];
+		}
+
+		dims = Math.min(dims, numVariables);
+		double[][] found = new double[dims][];
+		variances = new double[dims];
+		Random random = new Random(1);
+		double explained = 0.0;
+		numComponents = 0;
+
+		while (numComponents < dims
+				&& explained < varianceTarget * totalVariance) {
+
+			double[] vector = new double[numVariables];
+			for (int v = 0; v < numVariables; v++) {
+				vector[v] = random.nextGaussian();
+			}
+			normalise(vector);
+
+			double eigenvalue = 0.0;
+			for (int iteration = 0; iteration < 1000; iteration++) {
+
+				double[] next = multiply(covariance, vector);
+				double length = normalise(next);
+				double change = 0.0;
+				for (int v = 0; v < numVariables; v++) {
+					change += Math.abs(next[v] - vector[v]);
+				}
+
+				vector = next;
+				eigenvalue = length;
+				if (change < 1e-10) {
+					break;
+				}
+			}
+
+			if (eigenvalue <= 1e-12) { // the rest of the variance is zero
+				break;
+			}
+
+			// deflate so the next iteration finds the next component
+			for (int i = 0; i < numVariables; i++) {
+				for (int j = 0; j < numVariables; j++) {
+					covariance[i][j] -= eigenvalue * vector[i] * vector[j];
+				}
+			}
+
+			found[numComponents] = vector;
+			variances[numComponents] = eigenvalue;
+			explained += eigenvalue;
+			numComponents++;
+		}
+
+		components = new double[numComponents][];
+		for (int c = 0; c < numComponents; c++) {
+			components[c] = found[c];
+		}
+
+	}
+
+	/**
+	 * Gets the mean of each dimension and the covariance matrix of the data
+	 */
+	private double[][] getCovariance(ArrayList<DataPoint> dataList) {
+
+		int dataSize = dataList.size();
+		means = new double[numVariables];
+		for (DataPoint point : dataList) {
+			for (int v = 0; v < numVariables; v++) {
+				means[v] += point.getValue(v);
+			}
+		}
+		for (int v = 0; v < numVariables; v++) {
+			means[v] /= dataSize;
+		}
+
+		double[][] covariance = new double[numVariables][numVariables];
+		double[] centred = new double[numVariables];
+		for (DataPoint point : dataList) {
+
+			for (int v = 0; v < numVariables; v++) {
+				centred[v] = point.getValue(v) - means[v];
+			}
+
+			for (int i = 0; i < numVariables; i++) {
+				for (int j = i; j < numVariables; j++) {
+					covariance[i][j] += centred[i] * centred[j];
+				}
+			}
+		}
+
+		// divide by dataSize - 1 and fill in the lower triangle
+		for (int i = 0; i < numVariables; i++) {
+			for (int j = i; j < numVariables; j++) {
+				covariance[i][j] /= dataSize - 1;
+				covariance[j][i] = covariance[i][j];
+			}
+		}
+
+		return covariance;
+	}
+
+	private double[] multiply(double[][] matrix, double[] vector) {
+
+		double[] result = new double[vector.length];
+		for (int i = 0; i < matrix.length; i++) {
+			double sum = 0.0;
+			for (int j = 0; j < vector.length; j++) {
+				sum += matrix[i][j] * vector[j];
+			}
+			result[i] = sum;
+		}
+
+		return result;
+	}
+
+	private double normalise(double[] vector) {
+
+		double length = 0.0;
+		for (double value : vector) {
+			length += value * value;
+		}
+		length = Math.sqrt(length);
+
+		if (length > 0) {
+			for (int v = 0; v < vector.length; v++) {
+				vector[v] /= length;
+			}
+		}
+
+		return length;
+	}
+
+}
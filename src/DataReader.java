@@ -10,6 +10,7 @@ public class DataReader {
 
 	private static final int NUM = 8;
 	ArrayList<DataPoint> dataPoints;
+	DataScaler scaler;
 
 	/**
 	 * Constructor for initialising the array list of data points
@@ -36,12 +37,7 @@ public class DataReader {
 		while ((line = in.readLine()) != null) { // for each row
 
 			String[] dim = line.split("\\s+");
-			ArrayList<Double> dataPoint = new ArrayList<Double>(NUM);
-
-			// get the value of each variable from the line read
-			for (int i = 0; i < NUM; i++) {
-				dataPoint.add(Double.parseDouble(dim[i]));
-			}
+			ArrayList<Double> dataPoint = parseValues(dim, NUM);
 
 			categories.add(dim[NUM]); // store the set of categories
 
@@ -51,19 +47,51 @@ public class DataReader {
 		in.close();
 
 		// scale data
-		DataScaler scaler = new DataScaler(NUM);
+		scaler = new DataScaler(NUM);
 		dataPoints = scaler.scaleData(rawData);
 
-		// assign their categories
+		// assign their categories, and targets if the categories are numbers
 		int c = 0;
 		for (DataPoint point : dataPoints) {
 			point.setCategory(categories.get(c));
+			try {
+				point.setTarget(Double.parseDouble(categories.get(c)));
+			} catch (NumberFormatException e) {
+				// not a regression data set
+			}
 			//point.printDataPoint();
 			c++;
 		}
 
 	}
 
+	/**
+	 * Gets the value of each variable from the columns of a line. Missing
+	 * values, written as ? or NA, are read as NaN
+	 * @param dim The columns of the line
+	 * @param num The number of variables
+	 * @return the list of values
+	 * @throws NumberFormatException if a value is not a number
+	 */
+	public static ArrayList<Double> parseValues(String[] dim, int num) {
+
+		if (dim.length < num) {
+			throw new NumberFormatException("Expected " + num
+					+ " values but found " + dim.length);
+		}
+
+		ArrayList<Double> values = new ArrayList<Double>(num);
+		for (int i = 0; i < num; i++) {
+			if (dim[i].equals("?") || dim[i].equalsIgnoreCase("NA")) {
+				values.add(Double.NaN);
+			} else {
+				values.add(Double.parseDouble(dim[i]));
+			}
+		}
+
+		return values;
+	}
+
 	/**
 	 * Returns the complete list of DataPoint objects
 	 * @return the list of data points
@@ -72,4 +100,13 @@ public class DataReader {
 		return dataPoints;
 	}
 
+	/**
+	 * Returns the scaler fitted to the file, for scaling query points the
+	 * same way as the data
+	 * @return the fitted data scaler
+	 */
+	public DataScaler getScaler() {
+		return scaler;
+	}
+
 }
@@ -2,15 +2,23 @@ import java.util.ArrayList;
 
 /**
  * The DataScaler class that scales the given data using Euclidean distance
- * scaling
+ * scaling. Columns that are mostly zeros are divided by their standard
+ * deviation without being centred, so their zeros stay zeros, and rows that
+ * are mostly zeros after scaling are stored as sparse points
  */
 public class DataScaler {
 
+	/**
+	 * Columns with at least this fraction of zeros are not centred
+	 */
+	static final double SPARSE_COLUMN = 0.5;
+
 	private int numVariables;
 	private ArrayList<ArrayList<Double>> rawData;
 	private int dataSize;
 	private Double[] means;
 	private Double[] sDs;
+	private double[] centres;
 
 	/**
 	 * Constructor that takes in the number of dimensions and initialises all
@@ -22,6 +30,7 @@ public class DataScaler {
 		rawData = new ArrayList<ArrayList<Double>>();
 		means = new Double[num];
 		sDs = new Double[num];
+		centres = new double[num];
 	}
 
 	/**
@@ -36,24 +45,76 @@ public class DataScaler {
 		dataSize = rawData.size();
 		getMeans(); // get the mean of each dimension
 		getSDs(); // get the standard deviation of each dimension
+		getCentres(); // get the value each dimension is centred on
 
 		ArrayList<DataPoint> dataPoints = new ArrayList<DataPoint>();
 
 		// for each row, create a new data point
 		for (int row = 0; row < dataSize; row++) {
-			Double[] values = new Double[numVariables];
+			dataPoints.add(scaleValues(rawData.get(row), row));
+		}
+
+		return dataPoints;
+	}
+
+	/**
+	 * Returns the number of dimensions the scaler was made for
+	 * @return the number of dimensions
+	 */
+	public int getNumVariables() {
+		return numVariables;
+	}
+
+	/**
+	 * This method scales a new row of values, such as a query point, with
+	 * the means and standard deviations found by scaleData. A complete row
+	 * that is mostly zeros after scaling is returned as a sparse point
+	 * @param values The raw values of the row
+	 * @param index The integer position of the point
+	 * @return the scaled DataPoint object
+	 */
+	public DataPoint scaleValues(ArrayList<Double> values, int index) {
+
+		Double[] scaled = new Double[numVariables];
+		int numNonZeros = 0;
+		boolean hasMissing = false;
+		for (int col = 0; col < numVariables; col++) {
+			scaled[col] = (values.get(col) - centres[col]) / sDs[col];
+			if (Double.isNaN(values.get(col))) {
+				hasMissing = true;
+			} else if (scaled[col] != 0.0) {
+				numNonZeros++;
+			}
+		}
+
+		if (!hasMissing
+				&& numNonZeros <= PackedData.SPARSE_DENSITY * numVariables) {
+			int[] columns = new int[numNonZeros];
+			double[] nonZeros = new double[numNonZeros];
+			int next = 0;
 			for (int col = 0; col < numVariables; col++) {
-				values[col] =
-						(rawData.get(row).get(col) - means[col]) / sDs[col];
+				if (scaled[col] != 0.0) {
+					columns[next] = col;
+					nonZeros[next++] = scaled[col];
+				}
 			}
-			dataPoints.add(new DataPoint(values, row));
+			return new DataPoint(numVariables, columns, nonZeros, index);
 		}
 
-		return dataPoints;
+		// missing values are read as NaN and stay out of the distances, with
+		// the scaled mean in their place
+		DataPoint point = new DataPoint(scaled, index);
+		for (int col = 0; col < numVariables; col++) {
+			if (Double.isNaN(values.get(col))) {
+				point.setMissing(col, (means[col] - centres[col]) / sDs[col]);
+			}
+		}
+
+		return point;
 	}
 
 	/**
-	 * Gets the mean for each dimension
+	 * Gets the mean for each dimension, skipping missing values
 	 */
 	private void getMeans() {
 
@@ -64,20 +125,51 @@ public class DataScaler {
 
 		// get total sum for each variable
 		for (int col = 0; col < numVariables; col++) {
+			int count = 0;
 			for (int row = 0; row < dataSize; row++) {
-				means[col] += rawData.get(row).get(col);
+				double value = rawData.get(row).get(col);
+				if (!Double.isNaN(value)) {
+					means[col] += value;
+					count++;
+				}
+			}
+
+			// divide by number of values present to get mean
+			if (count > 0) {
+				means[col] /= count;
 			}
 		}
 
-		// divide by number of data points to get mean
-		for (int i = 0; i < numVariables; i++) {
-			means[i] /= dataSize;
+	}
+
+	/**
+	 * Gets the value each dimension is centred on, the mean unless at least
+	 * SPARSE_COLUMN of its values are zero. Distances other than cosine don't
+	 * depend on the centre
+	 */
+	private void getCentres() {
+
+		for (int col = 0; col < numVariables; col++) {
+			int count = 0;
+			int zeros = 0;
+			for (int row = 0; row < dataSize; row++) {
+				double value = rawData.get(row).get(col);
+				if (!Double.isNaN(value)) {
+					count++;
+					if (value == 0.0) {
+						zeros++;
+					}
+				}
+			}
+			centres[col] = count > 0 && zeros >= SPARSE_COLUMN * count
+					? 0.0 : means[col];
 		}
 
 	}
 
 	/**
-	 * Gets the standard deviation for each dimension
+	 * Gets the standard deviation for each dimension, skipping missing values.
+	 * Dimensions with no spread get 1
 	 */
 	private void getSDs() {
 
@@ -88,18 +180,24 @@ public class DataScaler {
 
 		// sum the squared difference from mean of each variable
 		for (int col = 0; col < numVariables; col++) {
+			int count = 0;
 			for (int row = 0; row < dataSize; row++) {
-				double squaredDiff =
-						Math.pow(rawData.get(row).get(col) - means[col], 2);
-				sDs[col] += squaredDiff;
+				double value = rawData.get(row).get(col);
+				if (!Double.isNaN(value)) {
+					sDs[col] += Math.pow(value - means[col], 2);
+					count++;
+				}
 			}
-		}
 
-		// divide by dataSize - 1 and root the variance
-		int size = dataSize - 1;
-		for (int i = 0; i < numVariables; i++) {
-			sDs[i] /= size;
-			sDs[i] = Math.sqrt(sDs[i]);
+			// divide by count - 1 and root the variance
+			sDs[col] /= count - 1;
+			sDs[col] = Math.sqrt(sDs[col]);
+
+			// a constant column is left unscaled, which keeps it at 0 once
+			// centred rather than dividing 0 by 0
+			if (!(sDs[col] > 0)) {
+				sDs[col] = 1.0;
+			}
 		}
 
 	}
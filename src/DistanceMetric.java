@@ -0,0 +1,11 @@
+/**
+ * The DistanceMetric enum lists the distance measures a classifier can use
+ * when comparing two data points
+ */
+public enum DistanceMetric {
+
+	EUCLIDEAN,
+	MANHATTAN,
+	COSINE
+
+}
@@ -0,0 +1,357 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The HyperparameterSearch class looks for the best combination of K,
+ * distance metric, voting method and variable subset. Candidates are run on a
+ * worker pool using successive halving: every candidate is scored on a small
+ * sample of the data, only the best fraction is promoted to a larger sample,
+ * and so on until the full data set is used. Each score is appended to a log
+ * file so that an interrupted search can be resumed with the same seed
+ */
+public class HyperparameterSearch {
+
+	private ArrayList<DataPoint> dataList;
+	private int dataSize;
+	private int numVariables;
+	private String logPath;
+	private HashMap<String, Double> logged;
+	private int reductionFactor;
+	private int minSampleSize;
+	private int numThreads;
+	private long seed;
+
+	/**
+	 * Candidate holds one configuration of the classifier and its last score
+	 */
+	public static class Candidate {
+
+		private int k;
+		private DistanceMetric metric;
+		private boolean weighted;
+		private Set<Integer> subset;
+		private double score;
+
+		/**
+		 * Constructor for a single configuration
+		 * @param k The number of neighbours, K
+		 * @param metric The distance metric
+		 * @param weighted Whether votes are weighted by distance
+		 * @param subset The variables used for the distance
+		 */
+		public Candidate(int k, DistanceMetric metric, boolean weighted,
+				Set<Integer> subset) {
+			this.k = k;
+			this.metric = metric;
+			this.weighted = weighted;
+			this.subset = new TreeSet<Integer>(subset);
+		}
+
+		public int getK() {
+			return k;
+		}
+
+		public DistanceMetric getMetric() {
+			return metric;
+		}
+
+		public boolean isWeighted() {
+			return weighted;
+		}
+
+		public Set<Integer> getSubset() {
+			return subset;
+		}
+
+		/**
+		 * Returns the accuracy from the last round this candidate was run in
+		 * @return the fraction of points classified correctly
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return "K=" + k + " " + metric + " "
+					+ (weighted ? "weighted" : "simple") + " " + subset;
+		}
+
+	}
+
+	/**
+	 * Constructor for initialising variables
+	 * @param dataList The list of scaled data points
+	 * @param logPath The file results are appended to and resumed from
+	 */
+	public HyperparameterSearch(ArrayList<DataPoint> dataList,
+			String logPath) {
+		this.dataList = dataList;
+		this.logPath = logPath;
+		dataSize = dataList.size();
+		numVariables = dataList.get(0).getNumVariables();
+		logged = new HashMap<String, Double>();
+		reductionFactor = 3;
+		minSampleSize = 50;
+		numThreads = Runtime.getRuntime().availableProcessors();
+		seed = 1;
+	}
+
+	/**
+	 * Sets how many candidates are dropped each round, keeping 1 in every
+	 * factor and growing the sample by the same factor
+	 * @param reductionFactor The reduction factor, at least 2
+	 */
+	public void setReductionFactor(int reductionFactor) {
+		this.reductionFactor = reductionFactor;
+	}
+
+	/**
+	 * Sets the number of data points used in the first round
+	 * @param minSampleSize The size of the first sample
+	 */
+	public void setMinSampleSize(int minSampleSize) {
+		this.minSampleSize = minSampleSize;
+	}
+
+	/**
+	 * Sets the number of worker threads
+	 * @param numThreads The number of threads
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Sets the seed used to sample the data. A search can only be resumed from
+	 * a log written with the same seed
+	 * @param seed The random seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates every combination of K from 1 to maxK, distance metric, voting
+	 * method and non-empty subset of variables
+	 * @param numVariables The number of dimensions
+	 * @param maxK The largest value of K to try
+	 * @return the list of candidates
+	 */
+	public static ArrayList<Candidate> createCandidates(
+			int numVariables, int maxK) {
+
+		ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+
+		// each bit pattern is a subset of the variables
+		for (int mask = 1; mask < (1 << numVariables); mask++) {
+
+			Set<Integer> subset = new TreeSet<Integer>();
+			for (int v = 0; v < numVariables; v++) {
+				if ((mask & (1 << v)) != 0) {
+					subset.add(v);
+				}
+			}
+
+			for (int k = 1; k <= maxK; k++) {
+				for (DistanceMetric metric : DistanceMetric.values()) {
+					candidates.add(new Candidate(k, metric, false, subset));
+					candidates.add(new Candidate(k, metric, true, subset));
+				}
+			}
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Runs successive halving over the given candidates
+	 * @param candidates The configurations to try
+	 * @return the best candidate, scored on the full data set
+	 * @throws IOException if the log file cannot be read or written
+	 */
+	public Candidate search(ArrayList<Candidate> candidates)
+			throws IOException {
+
+		readLog();
+
+		// the same shuffled order is used every round, so each sample
+		// contains the previous one
+		ArrayList<DataPoint> shuffled = new ArrayList<DataPoint>(dataList);
+		Collections.shuffle(shuffled, new Random(seed));
+
+		// K can't be more than the number of other points in the sample
+		int maxK = 0;
+		for (Candidate candidate : candidates) {
+			maxK = Math.max(maxK, candidate.getK());
+		}
+		int sampleSize =
+				Math.min(dataSize, Math.max(minSampleSize, maxK + 1));
+
+		ArrayList<Candidate> remaining = new ArrayList<Candidate>(candidates);
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		BufferedWriter log = new BufferedWriter(new FileWriter(logPath, true));
+
+		try {
+			int round = 0;
+			while (true) {
+
+				ArrayList<DataPoint> sample = new ArrayList<DataPoint>(
+						shuffled.subList(0, sampleSize));
+				evaluate(pool, log, round, sample, remaining);
+
+				Collections.sort(remaining, new Comparator<Candidate>() {
+					@Override
+					public int compare(Candidate a, Candidate b) {
+						return Double.compare(b.getScore(), a.getScore());
+					}
+				});
+
+				System.out.println("Round " + round + " [" + remaining.size()
+						+ " candidates] [" + sampleSize + " points] best "
+						+ remaining.get(0) + " ["
+						+ Math.round(remaining.get(0).getScore() * 100)
+						+ "%]");
+
+				if (sampleSize == dataSize) { // the scores are final
+					break;
+				}
+
+				// promote the best candidates to a bigger sample
+				int keep = (remaining.size() + reductionFactor - 1)
+						/ reductionFactor;
+				remaining =
+						new ArrayList<Candidate>(remaining.subList(0, keep));
+				sampleSize = (int) Math.min(dataSize,
+						(long) sampleSize * reductionFactor);
+				round++;
+			}
+		} finally {
+			pool.shutdown();
+			log.close();
+		}
+
+		return remaining.get(0);
+	}
+
+	/**
+	 * Scores every candidate on the sample, reusing scores found in the log
+	 */
+	private void evaluate(ExecutorService pool, BufferedWriter log, int round,
+			final ArrayList<DataPoint> sample, ArrayList<Candidate> candidates)
+			throws IOException {
+
+		ArrayList<Candidate> pending = new ArrayList<Candidate>();
+		ArrayList<Future<Double>> futures = new ArrayList<Future<Double>>();
+
+		for (final Candidate candidate : candidates) {
+
+			Double score = logged.get(logKey(round, sample.size(), candidate));
+			if (score != null) { // already run before the search was resumed
+				candidate.score = score;
+			} else {
+				pending.add(candidate);
+				futures.add(pool.submit(new Callable<Double>() {
+					@Override
+					public Double call() {
+						return scoreCandidate(candidate, sample);
+					}
+				}));
+			}
+		}
+
+		for (int c = 0; c < pending.size(); c++) {
+
+			Candidate candidate = pending.get(c);
+			try {
+				candidate.score = futures.get(c).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Search interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IOException("Candidate " + candidate + " failed",
+						e.getCause());
+			}
+
+			log.write(seed + "\t" + round + "\t" + sample.size() + "\t"
+					+ candidate.score + "\t" + candidate);
+			log.newLine();
+			log.flush();
+		}
+
+	}
+
+	/**
+	 * Classifies the sample with the configuration of the candidate
+	 * @return the fraction of points classified correctly
+	 */
+	private double scoreCandidate(Candidate candidate,
+			ArrayList<DataPoint> sample) {
+
+		// each candidate gets its own copy with the unused variables at 0
+		ArrayList<DataPoint> data = new ArrayList<DataPoint>(sample.size());
+		for (DataPoint point : sample) {
+
+			Double[] values = new Double[numVariables];
+			for (int v = 0; v < numVariables; v++) {
+				values[v] = candidate.getSubset().contains(v)
+						? point.getValue(v) : 0.0;
+			}
+
+			DataPoint copy = new DataPoint(values, point.getIndex());
+			copy.setCategory(point.toString());
+			data.add(copy);
+		}
+
+		KNNClassifier knn = candidate.isWeighted()
+				? new WeightedKNNClassifier(data)
+				: new SimpleKNNClassifier(data);
+		knn.setDistanceMetric(candidate.getMetric());
+
+		return knn.classify(candidate.getK()) / data.size();
+	}
+
+	/**
+	 * Loads the scores written by a previous run of the search
+	 */
+	private void readLog() throws IOException {
+
+		if (!new File(logPath).exists()) {
+			return;
+		}
+
+		BufferedReader in = new BufferedReader(new FileReader(logPath));
+		String line = null;
+		while ((line = in.readLine()) != null) {
+
+			String[] fields = line.split("\t");
+			if (fields.length == 5 && fields[0].equals(String.valueOf(seed))) {
+				logged.put(fields[1] + "\t" + fields[2] + "\t" + fields[4],
+						Double.parseDouble(fields[3]));
+			}
+		}
+
+		in.close();
+	}
+
+	private String logKey(int round, int sampleSize, Candidate candidate) {
+		return round + "\t" + sampleSize + "\t" + candidate;
+	}
+
+}
@@ -1,8 +1,133 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
 
-
+/**
+ * The KNNClassifier class holds the neighbour search and voting shared by
+ * every KNN classifier. Subclasses choose the kernel that weights the votes
+ */
 public abstract class KNNClassifier {
 
+	protected ArrayList<DataPoint> dataList;
+	protected int dataSize;
+	protected int numVariables;
+	private volatile DistanceMetric metric;
+	private volatile LSHIndex candidateIndex;
+	protected volatile long version;
+	private volatile long dataVersion;
+	private volatile PackedData packedData;
+	protected volatile VotingKernel kernel;
+	private volatile int[] localK;
+	private volatile long localKVersion;
+	private int localKMax;
+	private final LongAdder adaptiveQueries = new LongAdder();
+	private final LongAdder adaptiveNeighbours = new LongAdder();
+	private static final ThreadLocal<QueryScratch> SCRATCH =
+			new ThreadLocal<QueryScratch>() {
+				@Override
+				protected QueryScratch initialValue() {
+					return new QueryScratch();
+				}
+			};
+
+	/**
+	 * Constructor for initialising variables
+	 * @param dataList The list of data points
+	 */
+	public KNNClassifier(ArrayList<DataPoint> dataList) {
+		this.dataList = dataList;
+		dataSize = dataList.size();
+		numVariables = dataList.get(0).getNumVariables();
+		metric = DistanceMetric.EUCLIDEAN;
+		kernel = VotingKernel.UNIFORM;
+	}
+
+	/**
+	 * Adds a point to the training data, and to the candidate index if one is
+	 * set
+	 * @param point The data point
+	 */
+	public synchronized void addDataPoint(DataPoint point) {
+
+		dataList.add(point);
+		dataSize = dataList.size();
+		if (candidateIndex != null) {
+			candidateIndex.insert(point);
+		}
+		dataVersion++;
+		version++;
+	}
+
+	/**
+	 * Replaces the training data. A candidate index, if one is set, is
+	 * emptied and filled with the new points
+	 * @param dataList The new list of data points
+	 */
+	public synchronized void setDataList(ArrayList<DataPoint> dataList) {
+		this.dataList = dataList;
+		dataSize = dataList.size();
+		if (candidateIndex != null) {
+			candidateIndex.clear();
+			candidateIndex.insertAll(dataList);
+		}
+		dataVersion++;
+		version++;
+	}
+
+	/**
+	 * Returns a number that changes whenever the training data or the way it
+	 * is searched changes, so that anything derived from the predictions
+	 * knows when it is out of date
+	 * @return the version of the classifier
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the distance metric used to compare data points
+	 * @param metric The distance metric
+	 */
+	public synchronized void setDistanceMetric(DistanceMetric metric) {
+		this.metric = metric;
+		version++;
+	}
+
+	/**
+	 * Returns the distance metric used to compare data points
+	 * @return the distance metric
+	 */
+	public DistanceMetric getDistanceMetric() {
+		return metric;
+	}
+
+	/**
+	 * Calculates the distance between two points using the chosen metric
+	 * @param num The number of dimensions
+	 * @param pointAValues The values of the first point
+	 * @param pointBValues The values of the second point
+	 * @return the distance
+	 */
+	protected double calculateDistance(
+			int num,
+			ArrayList<Double> pointAValues,
+			ArrayList<Double> pointBValues) {
+
+		switch (metric) {
+			case MANHATTAN:
+				return calculateManhattanDistance(
+						num, pointAValues, pointBValues);
+			case COSINE:
+				return calculateCosineDistance(
+						num, pointAValues, pointBValues);
+			default:
+				return calculateEuclideanDistance(
+						num, pointAValues, pointBValues);
+		}
+	}
+
 	protected double calculateEuclideanDistance(
 			int num,
 			ArrayList<Double> pointAValues,
@@ -18,4 +143,860 @@ public abstract class KNNClassifier {
 		return distance;
 	}
 
+	protected double calculateManhattanDistance(
+			int num,
+			ArrayList<Double> pointAValues,
+			ArrayList<Double> pointBValues) {
+
+		double distance = 0.0;
+		for (int v = 0; v < num; v++) {
+			distance += Math.abs(pointAValues.get(v) - pointBValues.get(v));
+		}
+
+		return distance;
+	}
+
+	protected double calculateCosineDistance(
+			int num,
+			ArrayList<Double> pointAValues,
+			ArrayList<Double> pointBValues) {
+
+		double dotProduct = 0.0;
+		double squaredLengthA = 0.0;
+		double squaredLengthB = 0.0;
+		for (int v = 0; v < num; v++) {
+			double a = pointAValues.get(v);
+			double b = pointBValues.get(v);
+			dotProduct += a * b;
+			squaredLengthA += a * a;
+			squaredLengthB += b * b;
+		}
+
+		if (squaredLengthA == 0 || squaredLengthB == 0) {
+			return 1.0; // no direction to compare
+		}
+
+		return 1 - dotProduct / Math.sqrt(squaredLengthA * squaredLengthB);
+	}
+
+	/**
+	 * Calculates the distance to a sparse point using the chosen metric,
+	 * walking its non-zero values alongside the other point's values so
+	 * that it isn't expanded into a list
+	 * @param num The number of dimensions
+	 * @param pointAValues The values of the first point
+	 * @param pointB The sparse second point
+	 * @return the distance
+	 */
+	protected double calculateDistance(
+			int num,
+			ArrayList<Double> pointAValues,
+			DataPoint pointB) {
+
+		int[] columns = pointB.getColumns();
+		double[] nonZeros = pointB.getNonZeros();
+		double squaredDistance = 0.0;
+		double distance = 0.0;
+		double dotProduct = 0.0;
+		double squaredLengthA = 0.0;
+		double squaredLengthB = 0.0;
+
+		for (int v = 0, i = 0; v < num; v++) {
+			double a = pointAValues.get(v);
+			double b = i < columns.length && columns[i] == v
+					? nonZeros[i++] : 0.0;
+			squaredDistance += Math.pow(a - b, 2);
+			distance += Math.abs(a - b);
+			dotProduct += a * b;
+			squaredLengthA += a * a;
+			squaredLengthB += b * b;
+		}
+
+		switch (metric) {
+			case MANHATTAN:
+				return distance;
+			case COSINE:
+				if (squaredLengthA == 0 || squaredLengthB == 0) {
+					return 1.0; // no direction to compare
+				}
+				return 1 - dotProduct
+						/ Math.sqrt(squaredLengthA * squaredLengthB);
+			default:
+				return Math.sqrt(squaredDistance);
+		}
+	}
+
+	/**
+	 * Sets an index that narrows the neighbour search down to a set of
+	 * candidates, which are then ranked by their exact distance. The index
+	 * should hash with the same metric as this classifier
+	 * @param candidateIndex The index, or null to search the whole data list
+	 */
+	public synchronized void setCandidateIndex(LSHIndex candidateIndex) {
+		this.candidateIndex = candidateIndex;
+		version++;
+	}
+
+	/**
+	 * Gets the nearest neighbour for a given data point
+	 * @param pointA The data point
+	 * @return the list of neighbour data points
+	 */
+	protected ArrayList<DataPoint> getNearestNeighbours(DataPoint pointA) {
+
+		ArrayList<Double> pointAValues = pointA.getVariables();
+		ArrayList<DataPoint> pointANeighbours = new ArrayList<DataPoint>();
+		ArrayList<DataPoint> searchList = candidateIndex == null
+				? dataList : candidateIndex.getCandidates(pointA);
+
+		// for each other data point
+		for (int j = 0; j < searchList.size(); j++) {
+
+			DataPoint pointB = searchList.get(j);
+
+			// if they are not the same
+			if (pointA.getIndex() != pointB.getIndex()) {
+
+				double distance = pointB.isSparse()
+						? calculateDistance(numVariables, pointAValues, pointB)
+						: calculateDistance(numVariables, pointAValues,
+								pointB.getVariables());
+				pointB.setRelativeDistance(distance);
+				pointANeighbours.add(pointB);
+
+			}
+		}
+
+		Collections.sort(pointANeighbours);
+
+		return pointANeighbours;
+	}
+
+	/**
+	 * Sets the kernel that weights each neighbour's vote, or each
+	 * neighbour's target for a weighted regression
+	 * @param kernel The voting kernel
+	 */
+	public synchronized void setVotingKernel(VotingKernel kernel) {
+		this.kernel = kernel;
+		version++;
+	}
+
+	/**
+	 * Returns the kernel that weights the votes of the neighbours
+	 * @return the voting kernel
+	 */
+	public VotingKernel getVotingKernel() {
+		return kernel;
+	}
+
+	/**
+	 * Predicts the category for a given data point. If the list holds more
+	 * than K neighbours, the next one sets the kernel's bandwidth
+	 * @param neighbours The neighbours of the data point, nearest first
+	 * @param k The number of neighbours, K
+	 * @return the predicted category/class
+	 */
+	protected String predictCategory(ArrayList<DataPoint> neighbours, int k) {
+
+		k = Math.max(k, 1); // with no K the nearest neighbour decides
+
+		// give each category an id so the votes can go in an array
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		ArrayList<String> categories = new ArrayList<String>();
+		double[] distances = new double[k];
+		int[] categoryIds = new int[k];
+
+		for (int n = 0; n < k; n++) {
+
+			DataPoint neighbour = neighbours.get(n);
+			Integer id = ids.get(neighbour.toString());
+			if (id == null) {
+				id = categories.size();
+				ids.put(neighbour.toString(), id);
+				categories.add(neighbour.toString());
+			}
+
+			distances[n] = neighbour.getRelativeDistance();
+			categoryIds[n] = id;
+		}
+
+		double bandwidth = neighbours.size() > k
+				? neighbours.get(k).getRelativeDistance() : distances[k - 1];
+		double[] votes = new double[categories.size()];
+		return categories.get(
+				voteCategory(distances, categoryIds, k, bandwidth, votes));
+	}
+
+	/**
+	 * Adds up the weighted votes of the K nearest neighbours. If the nearest
+	 * neighbour is an exact match and the kernel would divide by zero, only
+	 * the exact matches vote, each counting once. A category wins if it has
+	 * more votes than any other, ties going to the category that got there
+	 * first
+	 * @param distances The distances of the neighbours, nearest first
+	 * @param categoryIds The category id of each neighbour
+	 * @param k The number of neighbours, K, at least 1
+	 * @param bandwidth The bandwidth of the kernel, from getBandwidth
+	 * @param votes An array of zeros, one for each category, to count in
+	 * @return the id of the predicted category
+	 */
+	protected int voteCategory(double[] distances, int[] categoryIds, int k,
+			double bandwidth, double[] votes) {
+
+		VotingKernel kernel = this.kernel;
+		int voters = k;
+		boolean exact = kernel.isSingular()
+				&& distances[0] < VotingKernel.EXACT_DISTANCE;
+		if (exact) {
+			voters = 1;
+			while (voters < k
+					&& distances[voters] < VotingKernel.EXACT_DISTANCE) {
+				voters++;
+			}
+		}
+
+		int category = categoryIds[0];
+		double highest = 0.0;
+
+		for (int n = 0; n < voters; n++) {
+
+			int neighbourClass = categoryIds[n];
+			votes[neighbourClass] += exact ? 1.0
+					: kernel.weight(distances[n], n, k, bandwidth);
+
+			if (votes[neighbourClass] > highest) {
+				highest = votes[neighbourClass];
+				category = neighbourClass;
+			}
+		}
+
+		return category;
+	}
+
+	/**
+	 * Returns how many neighbours to search for to vote with K of them. The
+	 * kernels that use a bandwidth need one more
+	 * @param k The number of neighbours, K
+	 * @return the number of neighbours to search for
+	 */
+	protected int getSearchSize(int k) {
+		return Math.max(k, 1) + (kernel.usesBandwidth() ? 1 : 0);
+	}
+
+	/**
+	 * Returns the bandwidth for a vote of the K nearest neighbours, the
+	 * distance of the (K+1)th, or of the Kth if there are only K
+	 * @param distances The distances of the neighbours, nearest first
+	 * @param k The number of neighbours voting, K, at least 1
+	 * @param count The number of neighbours found
+	 * @return the bandwidth
+	 */
+	protected static double getBandwidth(double[] distances, int k,
+			int count) {
+		return count > k ? distances[k] : distances[k - 1];
+	}
+
+	/**
+	 * Predicts the category of a single point from its nearest neighbours in
+	 * the data list. The point itself is skipped if it is in the list. Without
+	 * a candidate index the search runs on packed arrays and buffers owned by
+	 * the calling thread, so it allocates nothing and is safe to call from
+	 * several threads at once
+	 * @param point The data point
+	 * @param k The number of neighbours, K
+	 * @return the predicted category, or null if there are no neighbours
+	 */
+	public String predict(DataPoint point, int k) {
+
+		if (candidateIndex != null) {
+			return predictFromCandidates(point, k);
+		}
+
+		QueryScratch neighbours =
+				findNearestNeighbours(point, getSearchSize(k));
+		if (neighbours.count == 0) {
+			return null;
+		}
+
+		int n = Math.max(1, Math.min(k, neighbours.count));
+		int id = voteCategory(neighbours.distances, neighbours.categoryIds, n,
+				getBandwidth(neighbours.distances, n, neighbours.count),
+				neighbours.votes);
+
+		// leave the votes at zero for the next query
+		for (int i = 0; i < n; i++) {
+			neighbours.votes[neighbours.categoryIds[i]] = 0;
+		}
+
+		return neighbours.categories[id];
+	}
+
+	/**
+	 * Predicts the category of a point, counting the votes of its nearest
+	 * neighbours one at a time and stopping as soon as the vote is decided.
+	 * The search first keeps only minK neighbours, and is run again for maxK
+	 * only if the vote is undecided, so easy queries keep a small heap and a
+	 * tight bound on the search. After at least minK neighbours the vote
+	 * stops when the leader is ahead by more than the most the remaining
+	 * neighbours up to maxK could add, which gives the same answer as voting
+	 * with all maxK, or when the leader's lead is at least the given fraction
+	 * of the votes so far. The kernels that use a bandwidth only stop early
+	 * on the margin, with the bandwidth of the neighbours searched so far
+	 * @param point The data point
+	 * @param minK The fewest neighbours to count
+	 * @param maxK The most neighbours to count
+	 * @param margin The fraction of the votes the lead must reach, or more
+	 * than 1 to only stop when the result can't change
+	 * @return the predicted category, or null if there are no neighbours
+	 */
+	public String predictAdaptive(DataPoint point, int minK, int maxK,
+			double margin) {
+
+		VotingKernel kernel = this.kernel;
+		maxK = Math.max(maxK, 1);
+		int k = Math.min(Math.max(minK, 1), maxK);
+
+		while (true) {
+
+			int searchSize = k + (kernel.usesBandwidth() ? 1 : 0);
+			QueryScratch neighbours = findNearestNeighbours(point, searchSize);
+			int count = neighbours.count;
+			if (count == 0) {
+				return null;
+			}
+
+			// the last round if it has all maxK or there are no more points
+			boolean last = k == maxK || count < searchSize;
+			int n = Math.min(k, count);
+			int full = count < searchSize ? n : maxK;
+			double[] distances = neighbours.distances;
+			int[] categoryIds = neighbours.categoryIds;
+			double[] votes = neighbours.votes;
+			double bandwidth = getBandwidth(distances, n, count);
+			int category = -1;
+			int used = n;
+
+			if (kernel.isSingular()
+					&& distances[0] < VotingKernel.EXACT_DISTANCE) {
+
+				// decided once the exact matches are all found
+				if (last || distances[n - 1] >= VotingKernel.EXACT_DISTANCE) {
+					category = voteCategory(distances, categoryIds, n,
+							bandwidth, votes);
+				}
+			} else {
+
+				int leader = categoryIds[0];
+				double highest = 0.0;
+				double second = 0.0;
+				double total = 0.0;
+
+				for (int i = 0; i < n; i++) {
+
+					int neighbourClass = categoryIds[i];
+					double weight =
+							kernel.weight(distances[i], i, full, bandwidth);
+					votes[neighbourClass] += weight;
+					total += weight;
+
+					// keep track of the leader and the runner up
+					if (votes[neighbourClass] > highest) {
+						if (neighbourClass != leader) {
+							second = highest;
+							leader = neighbourClass;
+						}
+						highest = votes[neighbourClass];
+					} else if (neighbourClass != leader
+							&& votes[neighbourClass] > second) {
+						second = votes[neighbourClass];
+					}
+
+					if (i + 1 < minK) {
+						continue;
+					}
+
+					double lead = highest - second;
+					boolean decided = total > 0 && lead >= margin * total;
+					if (!decided && !kernel.usesBandwidth()) {
+						decided = lead > getMaxRemaining(
+								kernel, distances[i], i + 1, full);
+					}
+					if (decided) {
+						category = leader;
+						used = i + 1;
+						break;
+					}
+				}
+
+				if (category < 0 && last) {
+					category = leader;
+				}
+			}
+
+			// leave the votes at zero for the next query
+			for (int i = 0; i < n; i++) {
+				votes[categoryIds[i]] = 0;
+			}
+
+			if (category >= 0) {
+				adaptiveQueries.increment();
+				adaptiveNeighbours.add(used);
+				return neighbours.categories[category];
+			}
+
+			k = maxK; // each round scans all the data, so go straight to maxK
+		}
+	}
+
+	/**
+	 * Returns the most weight the neighbours after the first counted could
+	 * add to a vote of K, given that none is nearer than the last counted.
+	 * Only for kernels that don't use a bandwidth
+	 */
+	private static double getMaxRemaining(VotingKernel kernel,
+			double distance, int counted, int k) {
+
+		int remaining = k - counted;
+		if (kernel == VotingKernel.RANK) {
+			return remaining * (remaining + 1) / 2.0; // ranks K - counted to 1
+		}
+
+		return remaining * kernel.weight(distance, counted, k, 0.0);
+	}
+
+	/**
+	 * Returns the mean number of neighbours counted by predictAdaptive
+	 * @return the average K used
+	 */
+	public double getAverageAdaptiveK() {
+		long queries = adaptiveQueries.sum();
+		return queries == 0 ? 0 : (double) adaptiveNeighbours.sum() / queries;
+	}
+
+	/**
+	 * Learns a value of K for each point in the data, the smallest K up to
+	 * maxK that classifies it correctly when it is left out. Points that no K
+	 * gets right are given the K that is right for the most points
+	 * @param maxK The largest value of K to try
+	 */
+	public synchronized void learnLocalK(int maxK) {
+
+		PackedData data = getPackedData();
+		int[] learned = new int[data.size];
+		int[] correct = new int[maxK + 1];
+
+		for (int j = 0; j < data.size; j++) {
+
+			DataPoint point = dataList.get(j);
+			QueryScratch neighbours =
+					findNearestNeighbours(point, getSearchSize(maxK));
+			int count = Math.min(maxK, neighbours.count);
+
+			for (int k = 1; k <= count; k++) {
+
+				int id = voteCategory(neighbours.distances,
+						neighbours.categoryIds, k, getBandwidth(
+								neighbours.distances, k, neighbours.count),
+						neighbours.votes);
+				for (int n = 0; n < k; n++) {
+					neighbours.votes[neighbours.categoryIds[n]] = 0;
+				}
+
+				if (id == data.categoryIds[j]) {
+					correct[k]++;
+					if (learned[j] == 0) {
+						learned[j] = k;
+					}
+				}
+			}
+		}
+
+		// the K that is right most often, for points that no K gets right
+		int bestK = 1;
+		for (int k = 1; k <= maxK; k++) {
+			if (correct[k] > correct[bestK]) {
+				bestK = k;
+			}
+		}
+		for (int j = 0; j < data.size; j++) {
+			if (learned[j] == 0) {
+				learned[j] = bestK;
+			}
+		}
+
+		localKMax = maxK;
+		localKVersion = version;
+		localK = learned;
+	}
+
+	/**
+	 * Predicts the category of a point using the K learned for the region it
+	 * falls in, which is the K of its nearest neighbour. The values are
+	 * learned again if the data has changed since learnLocalK
+	 * @param point The data point
+	 * @return the predicted category, or null if there are no neighbours
+	 */
+	public String predictLocalK(DataPoint point) {
+
+		int[] learned = localK;
+		if (learned == null) {
+			throw new IllegalStateException("learnLocalK has not been run");
+		}
+		if (localKVersion != version) {
+			synchronized (this) {
+				if (localKVersion != version) {
+					learnLocalK(localKMax);
+				}
+				learned = localK;
+			}
+		}
+
+		QueryScratch neighbours =
+				findNearestNeighbours(point, getSearchSize(localKMax));
+		if (neighbours.count == 0) {
+			return null;
+		}
+
+		int k = Math.min(learned[neighbours.positions[0]], neighbours.count);
+		int id = voteCategory(neighbours.distances, neighbours.categoryIds, k,
+				getBandwidth(neighbours.distances, k, neighbours.count),
+				neighbours.votes);
+		for (int n = 0; n < k; n++) {
+			neighbours.votes[neighbours.categoryIds[n]] = 0;
+		}
+
+		return neighbours.categories[id];
+	}
+
+	/**
+	 * Returns the categories in the order used for probabilities
+	 * @return the names of the categories
+	 */
+	public String[] getCategories() {
+		return getPackedData().categories.clone();
+	}
+
+	/**
+	 * Predicts the probability of each category for a point, as the share
+	 * of the weighted votes of its K nearest neighbours
+	 * @param point The data point
+	 * @param k The number of neighbours, K
+	 * @return the probability of each category, in the order of
+	 * getCategories
+	 */
+	public double[] predictProbabilities(DataPoint point, int k) {
+		double[] probabilities = new double[getPackedData().categories.length];
+		predictProbabilities(point, k, probabilities);
+		return probabilities;
+	}
+
+	/**
+	 * Predicts the probability of each category for a point into the given
+	 * array, without allocating
+	 * @param point The data point
+	 * @param k The number of neighbours, K
+	 * @param probabilities The array to fill, one entry for each category in
+	 * the order of getCategories
+	 * @return the predicted category, or null if there are no neighbours
+	 */
+	public String predictProbabilities(DataPoint point, int k,
+			double[] probabilities) {
+
+		Arrays.fill(probabilities, 0.0);
+		QueryScratch neighbours =
+				findNearestNeighbours(point, getSearchSize(k));
+		if (neighbours.count == 0) {
+			return null;
+		}
+
+		int n = Math.max(1, Math.min(k, neighbours.count));
+		double[] votes = neighbours.votes;
+		int id = voteCategory(neighbours.distances, neighbours.categoryIds, n,
+				getBandwidth(neighbours.distances, n, neighbours.count), votes);
+
+		double total = 0.0;
+		for (int c = 0; c < probabilities.length; c++) {
+			total += votes[c];
+		}
+
+		for (int c = 0; c < probabilities.length; c++) {
+			probabilities[c] = total > 0 ? votes[c] / total : 0.0;
+		}
+		if (total <= 0) { // every weight was zero
+			probabilities[id] = 1.0;
+		}
+
+		// leave the votes at zero for the next query
+		for (int i = 0; i < n; i++) {
+			votes[neighbours.categoryIds[i]] = 0;
+		}
+
+		return neighbours.categories[id];
+	}
+
+	/**
+	 * Finds the K nearest neighbours of a point in the packed data. The
+	 * results are in the calling thread's scratch buffers, which are reused
+	 * by its next search. Where either point has missing values, the
+	 * distance is taken over the variables both have and scaled up to the
+	 * full number of variables
+	 * @param point The data point
+	 * @param k The number of neighbours, K
+	 * @return the scratch buffers, holding the neighbours nearest first
+	 */
+	protected QueryScratch findNearestNeighbours(DataPoint point, int k) {
+
+		PackedData data = getPackedData();
+		QueryScratch neighbours = SCRATCH.get();
+		neighbours.reset(data, k);
+		DistanceMetric metric = this.metric;
+
+		int num = data.numVariables;
+		double[] query = neighbours.query;
+		boolean[] queryPresent = neighbours.queryPresent;
+		double[] values = data.values;
+		boolean queryMissing = point.hasMissing();
+		double squaredLength = 0.0;
+		int queryCount = 0;
+		int shared = 0;
+		point.getValues(query);
+		for (int v = 0; v < num; v++) {
+			queryPresent[v] = !point.isMissing(v);
+			if (queryPresent[v]) {
+				shared++;
+			} else {
+				query[v] = 0.0; // left out of the sparse form and the length
+			}
+			squaredLength += query[v] * query[v];
+			if (query[v] != 0.0) { // the sparse form of the query
+				neighbours.queryColumns[queryCount] = v;
+				neighbours.queryValues[queryCount++] = query[v];
+			}
+		}
+		double length = Math.sqrt(squaredLength);
+		int index = point.getIndex();
+
+		for (int j = 0, offset = 0; j < data.size; j++, offset += num) {
+
+			if (data.indices[j] == index) { // skip the point itself
+				continue;
+			}
+
+			double distance = 0.0;
+			if (data.isSparse()) {
+				distance = sparseDistance(data, j, neighbours, queryCount,
+						length, queryMissing ? queryPresent : null, shared,
+						metric);
+			} else if (queryMissing
+					|| (data.rowMissing != null && data.rowMissing[j])) {
+				distance = sharedDistance(data, j, query, queryPresent,
+						metric);
+			} else {
+				switch (metric) {
+					case MANHATTAN:
+						for (int v = 0; v < num; v++) {
+							distance +=
+									Math.abs(query[v] - values[offset + v]);
+						}
+						break;
+					case COSINE:
+						double dotProduct = 0.0;
+						for (int v = 0; v < num; v++) {
+							dotProduct += query[v] * values[offset + v];
+						}
+						distance = length == 0 || data.lengths[j] == 0 ? 1.0
+								: 1 - dotProduct / (length * data.lengths[j]);
+						break;
+					default:
+						// squared distance, stopping once it can't be kept
+						double bound = neighbours.isFull()
+								? neighbours.worstDistance()
+								: Double.POSITIVE_INFINITY;
+						for (int v = 0; v < num && distance <= bound; v++) {
+							double difference = query[v] - values[offset + v];
+							distance += difference * difference;
+						}
+						break;
+				}
+			}
+
+			neighbours.offer(distance, j);
+		}
+
+		neighbours.sort(data);
+		if (metric == DistanceMetric.EUCLIDEAN) {
+			for (int n = 0; n < neighbours.count; n++) {
+				neighbours.distances[n] = Math.sqrt(neighbours.distances[n]);
+			}
+		}
+
+		return neighbours;
+	}
+
+	/**
+	 * Returns the distance between the query and a sparse row. Euclidean
+	 * distances are squared, as in the dense search. Rows in the sparse layout
+	 * have no missing values, so if the query has some the distance is taken
+	 * over the variables it has, as in sharedDistance
+	 */
+	private double sparseDistance(PackedData data, int j,
+			QueryScratch neighbours, int queryCount, double length,
+			boolean[] queryPresent, int shared, DistanceMetric metric) {
+
+		if (shared == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		int num = data.numVariables;
+		switch (metric) {
+			case MANHATTAN:
+				return data.manhattanDistance(j, neighbours.queryColumns,
+						neighbours.queryValues, queryCount, queryPresent)
+						* num / shared;
+			case COSINE:
+				double rowLength = queryPresent == null ? data.lengths[j]
+						: data.sharedLength(j, queryPresent);
+				return length == 0 || rowLength == 0 ? 1.0
+						: 1 - data.dotProduct(j, neighbours.query)
+								/ (length * rowLength);
+			default:
+				return data.squaredDistance(j, neighbours.queryColumns,
+						neighbours.queryValues, queryCount, queryPresent)
+						* num / shared;
+		}
+	}
+
+	/**
+	 * Returns the distance between the query and a dense row over only the
+	 * variables present in both. Euclidean and Manhattan distances are scaled
+	 * by the number of variables over the number shared, so points missing
+	 * values are not made to look nearer. Points with no variables in common
+	 * are infinitely far apart
+	 */
+	private double sharedDistance(PackedData data, int j, double[] query,
+			boolean[] queryPresent, DistanceMetric metric) {
+
+		int num = data.numVariables;
+		int offset = j * num;
+		double[] values = data.values;
+		int shared = 0;
+		double sum = 0.0;
+		double queryLength = 0.0;
+		double rowLength = 0.0;
+
+		for (int v = 0; v < num; v++) {
+
+			if (!queryPresent[v] || !data.isPresent(j, v)) {
+				continue;
+			}
+			shared++;
+
+			double difference = query[v] - values[offset + v];
+			switch (metric) {
+				case MANHATTAN:
+					sum += Math.abs(difference);
+					break;
+				case COSINE:
+					sum += query[v] * values[offset + v];
+					queryLength += query[v] * query[v];
+					rowLength += values[offset + v] * values[offset + v];
+					break;
+				default:
+					sum += difference * difference;
+					break;
+			}
+		}
+
+		if (shared == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (metric == DistanceMetric.COSINE) {
+			return queryLength == 0 || rowLength == 0 ? 1.0
+					: 1 - sum / Math.sqrt(queryLength * rowLength);
+		}
+
+		return sum * num / shared;
+	}
+
+	/**
+	 * Returns the packed copy of the data list, making a new one if the data
+	 * has changed since the last copy. Changing how the data is searched
+	 * keeps the copy
+	 */
+	private PackedData getPackedData() {
+
+		PackedData data = packedData;
+		if (data == null || data.version != dataVersion) {
+			synchronized (this) {
+				data = packedData;
+				if (data == null || data.version != dataVersion) {
+					data = new PackedData(dataList, numVariables,
+							dataVersion);
+					packedData = data;
+				}
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * Predicts from the candidates of the index. The search writes distances
+	 * into the shared data points, so only one of these runs at a time
+	 */
+	private synchronized String predictFromCandidates(DataPoint point, int k) {
+
+		ArrayList<DataPoint> neighbours = getNearestNeighbours(point);
+		if (neighbours.isEmpty()) {
+			return null;
+		}
+
+		return predictCategory(neighbours, Math.min(k, neighbours.size()));
+	}
+
+	/**
+	 * This method classifies each of the given points using the data list as
+	 * the reference set
+	 * @param points The points to classify
+	 * @param k The number of neighbours, K
+	 * @return the score for the classification
+	 */
+	public double classify(ArrayList<DataPoint> points, int k) {
+
+		double score = 0;
+
+		for (DataPoint point : points) {
+			if (point.toString().equals(predict(point, k))) {
+				score++;
+			}
+		}
+
+		return score;
+	}
+
+	/**
+	 * This method loops through each data point and classifies them
+	 * @param k The number of neighbours, K
+	 * @return the score for the classification
+	 */
+	public double classify(int k) {
+
+		double score = 0;
+
+		// for each data point
+		for (int i = 0; i < dataSize; i++) {
+
+			DataPoint pointA = dataList.get(i);
+			String category = predict(pointA, k);
+
+			if (pointA.toString().equals(category)) {
+				score++;
+			}
+
+		}
+
+		return score;
+	}
+
 }
@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The KNNRegressor class predicts the continuous target of a point from the
+ * targets of its nearest neighbours, using the same packed neighbour search
+ * as the classifiers
+ */
+public class KNNRegressor extends KNNClassifier {
+
+	/**
+	 * The ways of combining the targets of the neighbours
+	 */
+	public enum Aggregation {
+
+		/** the mean of the targets */
+		MEAN,
+
+		/** the mean of the targets weighted by the voting kernel */
+		WEIGHTED_MEAN,
+
+		/** the median of the targets */
+		MEDIAN
+
+	}
+
+	private Aggregation aggregation;
+
+	/**
+	 * Constructor for initialising variables. The targets are taken from
+	 * DataPoint.getTarget
+	 * @param dataList The list of data points
+	 * @param aggregation How the targets of the neighbours are combined
+	 */
+	public KNNRegressor(ArrayList<DataPoint> dataList,
+			Aggregation aggregation) {
+		super(dataList);
+		this.aggregation = aggregation;
+		kernel = VotingKernel.INVERSE;
+	}
+
+	/**
+	 * Predicts the target of a single point from its nearest neighbours. The
+	 * point itself is skipped if it is in the data list
+	 * @param point The data point
+	 * @param k The number of neighbours, K
+	 * @return the predicted target, or NaN if there are no neighbours
+	 */
+	public double predictValue(DataPoint point, int k) {
+
+		QueryScratch neighbours =
+				findNearestNeighbours(point, getSearchSize(k));
+		if (neighbours.count == 0) {
+			return Double.NaN;
+		}
+
+		int n = Math.max(1, Math.min(k, neighbours.count));
+		double[] targets = neighbours.targets;
+		double[] distances = neighbours.distances;
+
+		switch (aggregation) {
+
+			case MEDIAN:
+				Arrays.sort(targets, 0, n);
+				return n % 2 == 1 ? targets[n / 2]
+						: (targets[n / 2 - 1] + targets[n / 2]) / 2;
+
+			case WEIGHTED_MEAN:
+				VotingKernel kernel = this.kernel;
+
+				// exact matches outweigh everything for the inverse kernels
+				if (kernel.isSingular()
+						&& distances[0] < VotingKernel.EXACT_DISTANCE) {
+					int exact = 1;
+					while (exact < n
+							&& distances[exact] < VotingKernel.EXACT_DISTANCE) {
+						exact++;
+					}
+					return mean(targets, exact);
+				}
+
+				double bandwidth =
+						getBandwidth(distances, n, neighbours.count);
+				double weightedSum = 0.0;
+				double totalWeight = 0.0;
+				for (int i = 0; i < n; i++) {
+					double weight =
+							kernel.weight(distances[i], i, n, bandwidth);
+					weightedSum += weight * targets[i];
+					totalWeight += weight;
+				}
+				return totalWeight > 0 ? weightedSum / totalWeight
+						: mean(targets, n);
+
+			default:
+				return mean(targets, n);
+		}
+	}
+
+	/**
+	 * Predicts the target of every point in the data list, leaving each one
+	 * out of its own neighbours, across a pool of threads
+	 * @param k The number of neighbours, K
+	 * @param numThreads The number of threads
+	 * @return the root mean squared error and the mean absolute error
+	 */
+	public double[] evaluate(final int k, int numThreads) {
+
+		final ArrayList<DataPoint> points = dataList;
+		int size = points.size();
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		ArrayList<Future<double[]>> futures =
+				new ArrayList<Future<double[]>>();
+
+		// each thread sums the errors of its own slice
+		int sliceSize = (size + numThreads - 1) / numThreads;
+		for (int start = 0; start < size; start += sliceSize) {
+
+			final int from = start;
+			final int to = Math.min(size, start + sliceSize);
+			futures.add(pool.submit(new Callable<double[]>() {
+				@Override
+				public double[] call() {
+					double squaredError = 0.0;
+					double absoluteError = 0.0;
+					for (int i = from; i < to; i++) {
+						DataPoint point = points.get(i);
+						double error = predictValue(point, k)
+								- point.getTarget();
+						squaredError += error * error;
+						absoluteError += Math.abs(error);
+					}
+					return new double[] { squaredError, absoluteError };
+				}
+			}));
+		}
+
+		double squaredError = 0.0;
+		double absoluteError = 0.0;
+		try {
+			for (Future<double[]> future : futures) {
+				double[] errors = future.get();
+				squaredError += errors[0];
+				absoluteError += errors[1];
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Evaluation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Evaluation failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+
+		return new double[] {
+				Math.sqrt(squaredError / size), absoluteError / size };
+	}
+
+	private double mean(double[] values, int n) {
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			sum += values[i];
+		}
+		return sum / n;
+	}
+
+}
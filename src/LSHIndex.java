@@ -0,0 +1,256 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * The LSHIndex class hashes data points so that close points are likely to
+ * land in the same bucket. A query only has to be compared against the points
+ * that share a bucket with it in at least one table. Cosine distance uses
+ * random hyperplanes and Euclidean distance uses p-stable (Gaussian)
+ * projections cut into buckets of a fixed width
+ */
+public class LSHIndex {
+
+	private int numVariables;
+	private DistanceMetric metric;
+	private int numTables;
+	private int hashLength;
+	private double bucketWidth;
+	private double[][][] projections;
+	private double[][] offsets;
+	private ArrayList<HashMap<Long, ArrayList<DataPoint>>> tables;
+	private ArrayList<DataPoint> points;
+	private long numQueries;
+	private long numCandidates;
+
+	/**
+	 * Constructor that draws the random projections for every table
+	 * @param num The number of dimensions
+	 * @param metric COSINE or EUCLIDEAN
+	 * @param numTables The number of hash tables, more gives better recall
+	 * @param hashLength The hash functions per table, more gives fewer
+	 * candidates
+	 * @param bucketWidth The bucket width for Euclidean hashing
+	 * @param seed The random seed
+	 */
+	public LSHIndex(int num, DistanceMetric metric, int numTables,
+			int hashLength, double bucketWidth, long seed) {
+
+		if (metric != DistanceMetric.COSINE
+				&& metric != DistanceMetric.EUCLIDEAN) {
+			throw new IllegalArgumentException(
+					"No locality-sensitive hash for " + metric);
+		}
+		if (metric == DistanceMetric.COSINE && hashLength > 63) {
+			throw new IllegalArgumentException(
+					"Cosine hash length must be at most 63 bits");
+		}
+
+		numVariables = num;
+		this.metric = metric;
+		this.numTables = numTables;
+		this.hashLength = hashLength;
+		this.bucketWidth = bucketWidth;
+		points = new ArrayList<DataPoint>();
+
+		Random random = new Random(seed);
+		projections = new double[numTables][hashLength][numVariables];
+		offsets = new double[numTables][hashLength];
+		tables = new ArrayList<HashMap<Long, ArrayList<DataPoint>>>(numTables);
+
+		for (int t = 0; t < numTables; t++) {
+			for (int h = 0; h < hashLength; h++) {
+				for (int v = 0; v < numVariables; v++) {
+					projections[t][h][v] = random.nextGaussian();
+				}
+				offsets[t][h] = random.nextDouble() * bucketWidth;
+			}
+			tables.add(new HashMap<Long, ArrayList<DataPoint>>());
+		}
+
+	}
+
+	/**
+	 * Adds a point to every table. Points can be added at any time
+	 * @param point The data point
+	 */
+	public void insert(DataPoint point) {
+
+		for (int t = 0; t < numTables; t++) {
+
+			long key = hash(t, point);
+			ArrayList<DataPoint> bucket = tables.get(t).get(key);
+			if (bucket == null) {
+				bucket = new ArrayList<DataPoint>();
+				tables.get(t).put(key, bucket);
+			}
+			bucket.add(point);
+		}
+
+		points.add(point);
+	}
+
+	/**
+	 * Adds every point in the list
+	 * @param dataList The list of data points
+	 */
+	public void insertAll(ArrayList<DataPoint> dataList) {
+		for (DataPoint point : dataList) {
+			insert(point);
+		}
+	}
+
+	/**
+	 * Removes every point, keeping the hash functions
+	 */
+	public synchronized void clear() {
+		for (HashMap<Long, ArrayList<DataPoint>> table : tables) {
+			table.clear();
+		}
+		points.clear();
+		numQueries = 0;
+		numCandidates = 0;
+	}
+
+	/**
+	 * Gets the points that share a bucket with the query in any table
+	 * @param point The query point
+	 * @return the list of candidate points, each listed once
+	 */
+	public ArrayList<DataPoint> getCandidates(DataPoint point) {
+
+		ArrayList<DataPoint> candidates = findCandidates(point);
+
+		synchronized (this) {
+			numQueries++;
+			numCandidates += candidates.size();
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Gets the candidates of a query without counting it in the average
+	 * candidate set size
+	 */
+	private ArrayList<DataPoint> findCandidates(DataPoint point) {
+
+		ArrayList<DataPoint> candidates = new ArrayList<DataPoint>();
+		HashSet<Integer> seen = new HashSet<Integer>();
+
+		for (int t = 0; t < numTables; t++) {
+
+			ArrayList<DataPoint> bucket = tables.get(t).get(hash(t, point));
+			if (bucket == null) {
+				continue;
+			}
+
+			for (DataPoint candidate : bucket) {
+				if (seen.add(candidate.getIndex())) {
+					candidates.add(candidate);
+				}
+			}
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Returns the number of points in the index
+	 * @return the number of points
+	 */
+	public int size() {
+		return points.size();
+	}
+
+	/**
+	 * Returns the mean number of candidates per query so far
+	 * @return the average candidate set size
+	 */
+	public synchronized double getAverageCandidates() {
+		return numQueries == 0 ? 0 : (double) numCandidates / numQueries;
+	}
+
+	/**
+	 * Measures the fraction of each query's exact k nearest neighbours that
+	 * appear in its candidate set. Since candidates are ranked by their exact
+	 * distance, this is also the recall of the k nearest neighbours returned.
+	 * These lookups are not counted in the average candidate set size, and
+	 * the exact search doesn't write to the points, so recall can be measured
+	 * while a classifier is using the index
+	 * @param queries The query points
+	 * @param k The number of neighbours, K
+	 * @return the mean recall, from 0 to 1
+	 */
+	public double measureRecall(ArrayList<DataPoint> queries, int k) {
+
+		SimpleKNNClassifier exact = new SimpleKNNClassifier(points);
+		exact.setDistanceMetric(metric);
+		double found = 0;
+		double total = 0;
+
+		for (DataPoint query : queries) {
+
+			HashSet<Integer> candidates = new HashSet<Integer>();
+			for (DataPoint candidate : findCandidates(query)) {
+				candidates.add(candidate.getIndex());
+			}
+
+			// the packed search leaves the shared points untouched
+			QueryScratch neighbours =
+					exact.findNearestNeighbours(query, Math.max(k, 1));
+			int n = Math.min(k, neighbours.count);
+			for (int i = 0; i < n; i++) {
+				DataPoint neighbour = points.get(neighbours.positions[i]);
+				if (candidates.contains(neighbour.getIndex())) {
+					found++;
+				}
+			}
+			total += n;
+		}
+
+		return total == 0 ? 1 : found / total;
+	}
+
+	/**
+	 * Hashes a point for one table. Cosine hashing packs the side of each
+	 * hyperplane into the bits of the key. Euclidean hashing combines the
+	 * bucket numbers, where a rare collision only adds extra candidates. A
+	 * sparse point is projected through its non-zero values only
+	 */
+	private long hash(int table, DataPoint point) {
+
+		ArrayList<Double> values = point.isSparse() ? null
+				: point.getVariables();
+		long key = 0;
+
+		for (int h = 0; h < hashLength; h++) {
+
+			double[] direction = projections[table][h];
+			double projection = 0.0;
+			if (values == null) {
+				int[] columns = point.getColumns();
+				double[] nonZeros = point.getNonZeros();
+				for (int i = 0; i < columns.length; i++) {
+					projection += direction[columns[i]] * nonZeros[i];
+				}
+			} else {
+				for (int v = 0; v < numVariables; v++) {
+					projection += direction[v] * values.get(v);
+				}
+			}
+
+			if (metric == DistanceMetric.COSINE) {
+				key = (key << 1) | (projection >= 0 ? 1 : 0);
+			} else {
+				long bucket = (long) Math.floor(
+						(projection + offsets[table][h]) / bucketWidth);
+				key = key * 1000003 + bucket;
+			}
+		}
+
+		return key;
+	}
+
+}
@@ -0,0 +1,287 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The PackedData class is a read-only copy of a data list in flat primitive
+ * arrays, so the neighbour search can scan it without unboxing values or
+ * touching the DataPoint objects. Categories are stored as ids into the
+ * categories array. Data with missing values keeps a presence bitmap per row,
+ * and data that is mostly zeros is stored as compressed sparse rows instead
+ * of the dense values array. The two don't mix, so data with any missing
+ * value is stored densely however many zeros it has
+ */
+class PackedData {
+
+	/**
+	 * Complete data with at most this fraction of non-zero values is stored
+	 * as sparse rows
+	 */
+	static final double SPARSE_DENSITY = 0.25;
+
+	final long version;
+	final int size;
+	final int numVariables;
+	final double[] values;
+	final int presenceWords;
+	final long[] presence;
+	final boolean[] rowMissing;
+	final int[] rowStarts;
+	final int[] columns;
+	final double[] nonZeros;
+	final double[] lengths;
+	final int[] indices;
+	final int[] categoryIds;
+	final String[] categories;
+	final double[] targets;
+
+	/**
+	 * Constructor that copies the data list into the arrays
+	 * @param dataList The list of data points
+	 * @param numVariables The number of dimensions
+	 * @param version The version of the data list the copy was made from
+	 */
+	PackedData(ArrayList<DataPoint> dataList, int numVariables, long version) {
+
+		this.version = version;
+		this.numVariables = numVariables;
+		size = dataList.size();
+		lengths = new double[size];
+		indices = new int[size];
+		categoryIds = new int[size];
+		targets = new double[size];
+
+		// count the non-zero and missing values to choose the layout
+		int numNonZeros = 0;
+		boolean hasMissing = false;
+		for (int j = 0; j < size; j++) {
+			DataPoint point = dataList.get(j);
+			hasMissing |= point.hasMissing();
+			if (point.isSparse()) {
+				numNonZeros += point.getNonZeros().length;
+				continue;
+			}
+			ArrayList<Double> pointValues = point.getVariables();
+			for (int v = 0; v < numVariables; v++) {
+				if (pointValues.get(v) != 0.0) {
+					numNonZeros++;
+				}
+			}
+		}
+		boolean sparse = !hasMissing
+				&& numNonZeros <= SPARSE_DENSITY * size * numVariables;
+
+		presenceWords = (numVariables + 63) / 64;
+		presence = hasMissing ? new long[size * presenceWords] : null;
+		rowMissing = hasMissing ? new boolean[size] : null;
+		values = sparse ? null : new double[size * numVariables];
+		rowStarts = sparse ? new int[size + 1] : null;
+		columns = sparse ? new int[numNonZeros] : null;
+		nonZeros = sparse ? new double[numNonZeros] : null;
+
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		ArrayList<String> names = new ArrayList<String>();
+		int next = 0;
+
+		for (int j = 0; j < size; j++) {
+
+			DataPoint point = dataList.get(j);
+			double squaredLength = 0.0;
+
+			if (point.isSparse()) {
+
+				// copied straight from the non-zero values of the point
+				int[] pointColumns = point.getColumns();
+				double[] pointNonZeros = point.getNonZeros();
+				for (int i = 0; i < pointColumns.length; i++) {
+					double value = pointNonZeros[i];
+					if (sparse) {
+						columns[next] = pointColumns[i];
+						nonZeros[next++] = value;
+					} else {
+						values[j * numVariables + pointColumns[i]] = value;
+					}
+					squaredLength += value * value;
+				}
+				for (int v = 0; hasMissing && v < numVariables; v++) {
+					presence[j * presenceWords + (v >>> 6)] |= 1L << v;
+				}
+			} else {
+
+				ArrayList<Double> pointValues = point.getVariables();
+				for (int v = 0; v < numVariables; v++) {
+					double value = pointValues.get(v);
+					if (sparse) {
+						if (value != 0.0) {
+							columns[next] = v;
+							nonZeros[next++] = value;
+						}
+					} else {
+						values[j * numVariables + v] = value;
+					}
+					if (hasMissing && !point.isMissing(v)) {
+						presence[j * presenceWords + (v >>> 6)] |= 1L << v;
+					}
+					squaredLength += value * value;
+				}
+			}
+			if (sparse) {
+				rowStarts[j + 1] = next;
+			}
+			if (hasMissing) {
+				rowMissing[j] = point.hasMissing();
+			}
+			lengths[j] = Math.sqrt(squaredLength);
+			indices[j] = point.getIndex();
+			targets[j] = point.getTarget();
+
+			Integer id = ids.get(point.toString());
+			if (id == null) {
+				id = names.size();
+				ids.put(point.toString(), id);
+				names.add(point.toString());
+			}
+			categoryIds[j] = id;
+		}
+
+		categories = names.toArray(new String[names.size()]);
+
+	}
+
+	/**
+	 * Returns whether the rows are stored as compressed sparse rows
+	 * @return true if the data is sparse
+	 */
+	boolean isSparse() {
+		return rowStarts != null;
+	}
+
+	/**
+	 * Returns whether a value of a row is present
+	 * @param row The position of the row
+	 * @param v The index of the variable
+	 * @return false if the value is missing
+	 */
+	boolean isPresent(int row, int v) {
+		return presence == null
+				|| (presence[row * presenceWords + (v >>> 6)] & (1L << v)) != 0;
+	}
+
+	/**
+	 * Returns the squared Euclidean distance between a sparse query and a
+	 * sparse row, by merging their non-zero columns
+	 * @param row The position of the row
+	 * @param queryColumns The non-zero columns of the query, in order
+	 * @param queryValues The non-zero values of the query
+	 * @param queryCount The number of non-zero values in the query
+	 * @param queryPresent Whether each value of the query is present, or
+	 * null to use every column
+	 * @return the squared distance over the columns the query has
+	 */
+	double squaredDistance(int row, int[] queryColumns, double[] queryValues,
+			int queryCount, boolean[] queryPresent) {
+
+		double sum = 0.0;
+		int a = 0;
+		int b = rowStarts[row];
+		int end = rowStarts[row + 1];
+
+		while (a < queryCount && b < end) {
+			double diff;
+			if (queryColumns[a] == columns[b]) {
+				diff = queryValues[a++] - nonZeros[b++];
+			} else if (queryColumns[a] < columns[b]) {
+				diff = queryValues[a++];
+			} else if (queryPresent == null || queryPresent[columns[b]]) {
+				diff = nonZeros[b++];
+			} else {
+				b++;
+				continue;
+			}
+			sum += diff * diff;
+		}
+		for (; a < queryCount; a++) {
+			sum += queryValues[a] * queryValues[a];
+		}
+		for (; b < end; b++) {
+			if (queryPresent == null || queryPresent[columns[b]]) {
+				sum += nonZeros[b] * nonZeros[b];
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Returns the Manhattan distance between a sparse query and a sparse row,
+	 * by merging their non-zero columns
+	 * @param row The position of the row
+	 * @param queryColumns The non-zero columns of the query, in order
+	 * @param queryValues The non-zero values of the query
+	 * @param queryCount The number of non-zero values in the query
+	 * @param queryPresent Whether each value of the query is present, or
+	 * null to use every column
+	 * @return the distance over the columns the query has
+	 */
+	double manhattanDistance(int row, int[] queryColumns, double[] queryValues,
+			int queryCount, boolean[] queryPresent) {
+
+		double sum = 0.0;
+		int a = 0;
+		int b = rowStarts[row];
+		int end = rowStarts[row + 1];
+
+		while (a < queryCount && b < end) {
+			if (queryColumns[a] == columns[b]) {
+				sum += Math.abs(queryValues[a++] - nonZeros[b++]);
+			} else if (queryColumns[a] < columns[b]) {
+				sum += Math.abs(queryValues[a++]);
+			} else if (queryPresent == null || queryPresent[columns[b]]) {
+				sum += Math.abs(nonZeros[b++]);
+			} else {
+				b++;
+			}
+		}
+		for (; a < queryCount; a++) {
+			sum += Math.abs(queryValues[a]);
+		}
+		for (; b < end; b++) {
+			if (queryPresent == null || queryPresent[columns[b]]) {
+				sum += Math.abs(nonZeros[b]);
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Returns the length of a sparse row over only the columns the query has
+	 * @param row The position of the row
+	 * @param queryPresent Whether each value of the query is present
+	 * @return the length
+	 */
+	double sharedLength(int row, boolean[] queryPresent) {
+		double squaredLength = 0.0;
+		for (int b = rowStarts[row]; b < rowStarts[row + 1]; b++) {
+			if (queryPresent[columns[b]]) {
+				squaredLength += nonZeros[b] * nonZeros[b];
+			}
+		}
+		return Math.sqrt(squaredLength);
+	}
+
+	/**
+	 * Returns the dot product of a dense query and a sparse row, which only
+	 * touches the non-zero values of the row
+	 * @param row The position of the row
+	 * @param query The dense values of the query
+	 * @return the dot product
+	 */
+	double dotProduct(int row, double[] query) {
+		double dot = 0.0;
+		for (int b = rowStarts[row]; b < rowStarts[row + 1]; b++) {
+			dot += query[columns[b]] * nonZeros[b];
+		}
+		return dot;
+	}
+
+}
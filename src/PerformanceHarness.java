@@ -0,0 +1,391 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * The PerformanceHarness class measures the classifiers on synthetic data
+ * sets and writes the throughput, latency percentiles, peak heap and
+ * accuracy of each to a CSV report. Given the report of an earlier run as a
+ * baseline, it fails if any of them has got worse by more than a threshold.
+ * Run it with
+ * java PerformanceHarness &lt;report.csv&gt; [baseline.csv] [threshold]
+ */
+public class PerformanceHarness {
+
+	static final String HEADER = "name,size,variables,categories,k,"
+			+ "throughput,p50,p90,p99,peakHeap,accuracy";
+
+	/**
+	 * Accuracy may drop by this much before it counts as a regression, since
+	 * the same seed gives the same data and so the same accuracy
+	 */
+	static final double ACCURACY_TOLERANCE = 0.005;
+
+	/**
+	 * The measurements of one classifier on one data set
+	 */
+	public static class Result {
+
+		String name;
+		int size;
+		int numVariables;
+		int numCategories;
+		int k;
+		double throughput; // queries per second
+		double p50; // microseconds
+		double p90;
+		double p99;
+		long peakHeap; // bytes
+		double accuracy;
+
+		/**
+		 * Returns the key that matches a result with its baseline
+		 * @return the classifier and the shape of the data set
+		 */
+		String getKey() {
+			return name + "/" + size + "/" + numVariables + "/"
+					+ numCategories + "/" + k;
+		}
+
+		/**
+		 * Returns the result as a line of the report
+		 * @return the comma separated values
+		 */
+		String toCSV() {
+			return String.format(Locale.ROOT,
+					"%s,%d,%d,%d,%d,%.1f,%.2f,%.2f,%.2f,%d,%.4f",
+					name, size, numVariables, numCategories, k, throughput,
+					p50, p90, p99, peakHeap, accuracy);
+		}
+
+		/**
+		 * Reads a result from a line of the report
+		 * @param line The comma separated values
+		 * @return the result
+		 */
+		static Result parse(String line) {
+			String[] dim = line.split(",");
+			Result result = new Result();
+			result.name = dim[0];
+			result.size = Integer.parseInt(dim[1]);
+			result.numVariables = Integer.parseInt(dim[2]);
+			result.numCategories = Integer.parseInt(dim[3]);
+			result.k = Integer.parseInt(dim[4]);
+			result.throughput = Double.parseDouble(dim[5]);
+			result.p50 = Double.parseDouble(dim[6]);
+			result.p90 = Double.parseDouble(dim[7]);
+			result.p99 = Double.parseDouble(dim[8]);
+			result.peakHeap = Long.parseLong(dim[9]);
+			result.accuracy = Double.parseDouble(dim[10]);
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT,
+					"%s [N = %d] [d = %d] [%d categories] [K = %d] "
+					+ "[%.0f queries/s] [p50 %.1f us] [p90 %.1f us] "
+					+ "[p99 %.1f us] [%d MB] [%.1f%%]",
+					name, size, numVariables, numCategories, k, throughput,
+					p50, p90, p99, peakHeap >> 20, accuracy * 100);
+		}
+
+	}
+
+	private ArrayList<int[]> cases;
+	private int k;
+	private double separation;
+	private long seed;
+	private int repeats;
+
+	/**
+	 * Constructor for initialising variables
+	 * @param k The number of neighbours, K
+	 * @param separation The spread of the category centres, as passed to
+	 * SyntheticData
+	 * @param seed The seed the data sets are generated from
+	 * @param repeats The number of times each classification is timed
+	 */
+	public PerformanceHarness(int k, double separation, long seed,
+			int repeats) {
+		this.k = k;
+		this.separation = separation;
+		this.seed = seed;
+		this.repeats = repeats;
+		cases = new ArrayList<int[]>();
+	}
+
+	public static void main(String[] args) {
+
+		if (args.length < 1) {
+			System.out.println("Usage: java PerformanceHarness "
+					+ "<report.csv> [baseline.csv] [threshold]");
+			return;
+		}
+
+		PerformanceHarness harness = new PerformanceHarness(3, 0.4, 1, 5);
+		harness.addCase(1000, 8, 3);
+		harness.addCase(10000, 8, 3);
+		harness.addCase(5000, 64, 5);
+
+		try {
+			ArrayList<Result> results = harness.run();
+			writeReport(results, args[0]);
+
+			if (args.length > 1) {
+				double threshold =
+						args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+				ArrayList<String> regressions =
+						compare(results, readReport(args[1]), threshold);
+				for (String regression : regressions) {
+					System.out.println("REGRESSION " + regression);
+				}
+				if (!regressions.isEmpty()) {
+					System.exit(1);
+				}
+				System.out.println("No regressions against " + args[1]);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(2);
+		}
+
+	}
+
+	/**
+	 * Adds a data set to measure the classifiers on
+	 * @param size The number of points, N
+	 * @param numVariables The number of dimensions, d
+	 * @param numCategories The number of categories
+	 */
+	public void addCase(int size, int numVariables, int numCategories) {
+		cases.add(new int[] { size, numVariables, numCategories });
+	}
+
+	/**
+	 * Measures every classifier on every data set
+	 * @return the results, in the order they were measured
+	 */
+	public ArrayList<Result> run() {
+
+		ArrayList<Result> results = new ArrayList<Result>();
+
+		for (int[] dataCase : cases) {
+
+			ArrayList<DataPoint> data =
+					new SyntheticData(dataCase[1], dataCase[2], separation,
+							seed).generate(dataCase[0]);
+
+			KNNClassifier[] classifiers = {
+					new SimpleKNNClassifier(data),
+					new WeightedKNNClassifier(data) };
+
+			for (KNNClassifier knn : classifiers) {
+				Result result = measure(knn, data);
+				result.numCategories = dataCase[2];
+				System.out.println(result);
+				results.add(result);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Times leave-one-out classification of the whole data set for the
+	 * throughput, then each prediction on its own for the latencies. The
+	 * throughput is the best of the repeats, which is the least disturbed by
+	 * the rest of the machine. The latency percentiles are taken over the
+	 * predictions of every repeat together, so that pauses in some of the
+	 * runs still show in the tail
+	 */
+	private Result measure(KNNClassifier knn, ArrayList<DataPoint> data) {
+
+		int size = data.size();
+		Result result = new Result();
+		result.name = knn.getClass().getSimpleName();
+		result.size = size;
+		result.numVariables = data.get(0).getNumVariables();
+		result.k = k;
+
+		knn.classify(k); // warm up the buffers and the JIT
+		resetPeakHeap();
+
+		// throughput over the whole data set
+		double score = 0;
+		long fastest = Long.MAX_VALUE;
+		for (int r = 0; r < repeats; r++) {
+			long start = System.nanoTime();
+			score = knn.classify(k);
+			fastest = Math.min(fastest, System.nanoTime() - start);
+		}
+		result.throughput = size / (fastest / 1e9);
+		result.accuracy = score / size;
+
+		// latency of each prediction
+		long[] latencies = new long[size * repeats];
+		for (int r = 0; r < repeats; r++) {
+			for (int i = 0; i < size; i++) {
+				DataPoint point = data.get(i);
+				long before = System.nanoTime();
+				knn.predict(point, k);
+				latencies[r * size + i] = System.nanoTime() - before;
+			}
+		}
+		Arrays.sort(latencies);
+		result.p50 = percentile(latencies, 0.50);
+		result.p90 = percentile(latencies, 0.90);
+		result.p99 = percentile(latencies, 0.99);
+
+		result.peakHeap = getPeakHeap();
+
+		return result;
+	}
+
+	/**
+	 * Returns the nearest-rank percentile of sorted nanoseconds in
+	 * microseconds
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		int rank = (int) Math.ceil(fraction * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1e3;
+	}
+
+	/**
+	 * Collects garbage and starts the peak heap usage from the live data
+	 */
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Returns the sum of the peak usage of each heap pool since the last
+	 * reset, which is an upper bound on the peak heap
+	 */
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Writes the results to a CSV report
+	 * @param results The results
+	 * @param path The path of the report
+	 * @throws IOException if the report cannot be written
+	 */
+	public static void writeReport(ArrayList<Result> results, String path)
+			throws IOException {
+
+		PrintWriter writer = new PrintWriter(new FileWriter(path));
+		try {
+			writer.println(HEADER);
+			for (Result result : results) {
+				writer.println(result.toCSV());
+			}
+		} finally {
+			writer.close();
+		}
+
+	}
+
+	/**
+	 * Reads the results from a CSV report
+	 * @param path The path of the report
+	 * @return the results
+	 * @throws IOException if the report cannot be read
+	 */
+	public static ArrayList<Result> readReport(String path)
+			throws IOException {
+
+		ArrayList<Result> results = new ArrayList<Result>();
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		try {
+			reader.readLine(); // skip the header
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					results.add(Result.parse(line));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		return results;
+	}
+
+	/**
+	 * Compares results with a baseline. Throughput may fall, and latency and
+	 * peak heap may rise, by the threshold as a fraction of the baseline.
+	 * Results with no baseline are not compared
+	 * @param results The new results
+	 * @param baseline The results of the baseline run
+	 * @param threshold The fraction each measurement may get worse by
+	 * @return a description of each regression, empty if there are none
+	 */
+	public static ArrayList<String> compare(ArrayList<Result> results,
+			ArrayList<Result> baseline, double threshold) {
+
+		HashMap<String, Result> baselines = new HashMap<String, Result>();
+		for (Result result : baseline) {
+			baselines.put(result.getKey(), result);
+		}
+
+		ArrayList<String> regressions = new ArrayList<String>();
+		for (Result result : results) {
+
+			Result base = baselines.get(result.getKey());
+			if (base == null) {
+				continue;
+			}
+
+			String key = result.getKey();
+			if (result.throughput < base.throughput * (1 - threshold)) {
+				regressions.add(key + " throughput " + base.throughput
+						+ " -> " + result.throughput + " queries/s");
+			}
+			if (result.p50 > base.p50 * (1 + threshold)) {
+				regressions.add(key + " p50 " + base.p50 + " -> "
+						+ result.p50 + " us");
+			}
+			if (result.p90 > base.p90 * (1 + threshold)) {
+				regressions.add(key + " p90 " + base.p90 + " -> "
+						+ result.p90 + " us");
+			}
+			if (result.p99 > base.p99 * (1 + threshold)) {
+				regressions.add(key + " p99 " + base.p99 + " -> "
+						+ result.p99 + " us");
+			}
+			if (result.peakHeap > base.peakHeap * (1 + threshold)) {
+				regressions.add(key + " peak heap " + base.peakHeap + " -> "
+						+ result.peakHeap + " bytes");
+			}
+			if (result.accuracy < base.accuracy - ACCURACY_TOLERANCE) {
+				regressions.add(key + " accuracy " + base.accuracy + " -> "
+						+ result.accuracy);
+			}
+		}
+
+		return regressions;
+	}
+
+}
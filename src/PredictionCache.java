@@ -0,0 +1,309 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The PredictionCache class sits in front of a classifier and remembers the
+ * predictions for recent queries. Queries are keyed on their scaled values
+ * rounded to a grid, so that nearly identical points share an entry. The
+ * cache is cleared whenever the classifier's training data changes
+ */
+public class PredictionCache {
+
+	/**
+	 * The ways of choosing which entry to drop when the cache is full
+	 */
+	public enum EvictionPolicy {
+
+		/** drop the least recently used entry */
+		LRU,
+
+		/**
+		 * W-TinyLFU: new entries go into a small LRU window and only move
+		 * into the main LRU area if they have been asked for more often than
+		 * the entry they would replace
+		 */
+		TINY_LFU
+
+	}
+
+	private static final int SKETCH_DEPTH = 4;
+
+	private KNNClassifier classifier;
+	private int capacity;
+	private double quantum;
+	private EvictionPolicy policy;
+	private LinkedHashMap<QueryKey, String> window;
+	private LinkedHashMap<QueryKey, String> main;
+	private int windowCapacity;
+	private int mainCapacity;
+	private int[][] sketch;
+	private int sketchMask;
+	private int sketchAdditions;
+	private long version;
+	private long hits;
+	private long misses;
+
+	/**
+	 * QueryKey is the rounded values of a query, a bitmap of its missing
+	 * values and its K
+	 */
+	private static final class QueryKey {
+
+		private final long[] cells;
+		private final long[] missing;
+		private final int k;
+		private final int hashCode;
+
+		QueryKey(long[] cells, long[] missing, int k) {
+			this.cells = cells;
+			this.missing = missing;
+			this.k = k;
+			hashCode = 31 * (31 * Arrays.hashCode(cells)
+					+ Arrays.hashCode(missing)) + k;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof QueryKey)) {
+				return false;
+			}
+			QueryKey key = (QueryKey) other;
+			return k == key.k && Arrays.equals(cells, key.cells)
+					&& Arrays.equals(missing, key.missing);
+		}
+
+	}
+
+	/**
+	 * Constructor for initialising variables
+	 * @param classifier The classifier to cache predictions for
+	 * @param capacity The maximum number of entries, at least 1
+	 * @param quantum The grid size the scaled values are rounded to
+	 * @param policy The eviction policy
+	 * @throws IllegalArgumentException if the capacity is less than 1
+	 */
+	public PredictionCache(KNNClassifier classifier, int capacity,
+			double quantum, EvictionPolicy policy) {
+
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+					"Cache capacity must be at least 1: " + capacity);
+		}
+
+		this.classifier = classifier;
+		this.capacity = capacity;
+		this.quantum = quantum;
+		this.policy = policy;
+		version = classifier.getVersion();
+
+		// the window holds about 1% of the entries for W-TinyLFU
+		windowCapacity = policy == EvictionPolicy.LRU
+				? capacity : Math.max(1, capacity / 100);
+		mainCapacity = capacity - windowCapacity;
+		window = new LinkedHashMap<QueryKey, String>(16, 0.75f, true);
+		main = new LinkedHashMap<QueryKey, String>(16, 0.75f, true);
+
+		// a power of two so a slot can be found with a mask
+		int width =
+				Integer.highestOneBit(Math.max(16, capacity * 4) - 1) << 1;
+		sketch = new int[SKETCH_DEPTH][width];
+		sketchMask = width - 1;
+
+	}
+
+	/**
+	 * Predicts the category of a point, from the cache if a point in the same
+	 * grid cell was asked for before
+	 * @param point The scaled data point
+	 * @param k The number of neighbours, K
+	 * @return the predicted category
+	 */
+	public String predict(DataPoint point, int k) {
+
+		QueryKey key = createKey(point, k);
+
+		synchronized (this) {
+
+			if (classifier.getVersion() != version) { // data has changed
+				clear();
+				version = classifier.getVersion();
+			}
+
+			recordAccess(key);
+			String category = window.get(key);
+			if (category == null) {
+				category = main.get(key);
+			}
+
+			if (category != null) {
+				hits++;
+				return category;
+			}
+			misses++;
+		}
+
+		// classify outside the lock so other queries aren't held up
+		long predictedVersion = classifier.getVersion();
+		String category = classifier.predict(point, k);
+
+		synchronized (this) {
+			if (category != null && predictedVersion == version
+					&& predictedVersion == classifier.getVersion()) {
+				add(key, category);
+			}
+		}
+
+		return category;
+	}
+
+	/**
+	 * Removes every entry and resets the frequency counts
+	 */
+	public synchronized void clear() {
+		window.clear();
+		main.clear();
+		for (int[] row : sketch) {
+			Arrays.fill(row, 0);
+		}
+		sketchAdditions = 0;
+	}
+
+	/**
+	 * Returns the number of entries in the cache
+	 * @return the size of the cache
+	 */
+	public synchronized int size() {
+		return window.size() + main.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the fraction of queries answered from the cache
+	 * @return the hit rate, from 0 to 1
+	 */
+	public synchronized double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Rounds the values of the point to the grid. A missing value is stored
+	 * as 0, so the bitmap keeps it apart from a real 0
+	 */
+	private QueryKey createKey(DataPoint point, int k) {
+
+		double[] values = new double[point.getNumVariables()];
+		point.getValues(values); // without expanding a sparse point
+		long[] cells = new long[values.length];
+		long[] missing = null;
+		for (int v = 0; v < cells.length; v++) {
+			cells[v] = Math.round(values[v] / quantum);
+			if (point.isMissing(v)) {
+				if (missing == null) {
+					missing = new long[(cells.length + 63) / 64];
+				}
+				missing[v >>> 6] |= 1L << v;
+			}
+		}
+
+		return new QueryKey(cells, missing, k);
+	}
+
+	/**
+	 * Stores a new prediction, evicting according to the policy
+	 */
+	private void add(QueryKey key, String category) {
+
+		if (window.containsKey(key) || main.containsKey(key)) {
+			return; // another thread got here first
+		}
+
+		window.put(key, category);
+		if (window.size() <= windowCapacity) {
+			return;
+		}
+
+		// the least recently used entry leaves the window
+		Iterator<Map.Entry<QueryKey, String>> oldest =
+				window.entrySet().iterator();
+		Map.Entry<QueryKey, String> candidate = oldest.next();
+		oldest.remove();
+
+		if (policy == EvictionPolicy.LRU || mainCapacity == 0) {
+			return;
+		}
+
+		if (main.size() < mainCapacity) {
+			main.put(candidate.getKey(), candidate.getValue());
+			return;
+		}
+
+		// admit the candidate only if it is asked for more than the victim
+		Iterator<Map.Entry<QueryKey, String>> victims =
+				main.entrySet().iterator();
+		Map.Entry<QueryKey, String> victim = victims.next();
+		if (frequency(candidate.getKey()) > frequency(victim.getKey())) {
+			victims.remove();
+			main.put(candidate.getKey(), candidate.getValue());
+		}
+
+	}
+
+	/**
+	 * Counts an access in the count-min sketch, halving every count once
+	 * enough accesses have been seen so old popularity fades
+	 */
+	private void recordAccess(QueryKey key) {
+
+		if (policy != EvictionPolicy.TINY_LFU) {
+			return;
+		}
+
+		for (int d = 0; d < SKETCH_DEPTH; d++) {
+			sketch[d][slot(key, d)]++;
+		}
+
+		if (++sketchAdditions >= capacity * 10) {
+			for (int[] row : sketch) {
+				for (int i = 0; i < row.length; i++) {
+					row[i] >>>= 1;
+				}
+			}
+			sketchAdditions /= 2;
+		}
+
+	}
+
+	/**
+	 * Estimates how often a key was accessed, the smallest of its counts
+	 */
+	private int frequency(QueryKey key) {
+
+		int frequency = Integer.MAX_VALUE;
+		for (int d = 0; d < SKETCH_DEPTH; d++) {
+			frequency = Math.min(frequency, sketch[d][slot(key, d)]);
+		}
+
+		return frequency;
+	}
+
+	private int slot(QueryKey key, int depth) {
+		int hash = key.hashCode() * (0x9E3779B9 + 2 * depth);
+		return (hash ^ (hash >>> 16)) & sketchMask;
+	}
+
+}
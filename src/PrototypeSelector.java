@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * The PrototypeSelector class reduces the training set so that each query has
+ * fewer points to compare against. It offers Hart's condensed nearest
+ * neighbour rule, Wilson's edited nearest neighbour rule and random mutation
+ * hill climbing
+ */
+public class PrototypeSelector {
+
+	private ArrayList<DataPoint> dataList;
+	private int dataSize;
+
+	/**
+	 * Constructor for initialising variables
+	 * @param dataList The full list of data points
+	 */
+	public PrototypeSelector(ArrayList<DataPoint> dataList) {
+		this.dataList = dataList;
+		dataSize = dataList.size();
+	}
+
+	/**
+	 * Hart's condensed nearest neighbour rule. Points are added to the store
+	 * only when the points already in the store misclassify them with 1-NN,
+	 * repeating until a full pass adds nothing. Interior points are dropped
+	 * and the points near the class boundaries are kept
+	 * @return the condensed list of data points
+	 */
+	public ArrayList<DataPoint> condense() {
+
+		ArrayList<DataPoint> store = new ArrayList<DataPoint>();
+		HashSet<Integer> stored = new HashSet<Integer>();
+		store.add(dataList.get(0));
+		stored.add(dataList.get(0).getIndex());
+
+		boolean added = true;
+		while (added) {
+
+			added = false;
+			for (DataPoint point : dataList) {
+
+				if (stored.contains(point.getIndex())) {
+					continue;
+				}
+
+				SimpleKNNClassifier knn = new SimpleKNNClassifier(store);
+				if (!point.toString().equals(knn.predict(point, 1))) {
+					store.add(point);
+					stored.add(point.getIndex());
+					added = true;
+				}
+			}
+		}
+
+		return store;
+	}
+
+	/**
+	 * Wilson's edited nearest neighbour rule. Every point that is
+	 * misclassified by its k nearest neighbours in the full set is removed,
+	 * which drops noisy points and smooths the class boundaries
+	 * @param k The number of neighbours, K
+	 * @return the edited list of data points
+	 */
+	public ArrayList<DataPoint> edit(int k) {
+
+		SimpleKNNClassifier knn = new SimpleKNNClassifier(dataList);
+		ArrayList<DataPoint> edited = new ArrayList<DataPoint>();
+
+		for (DataPoint point : dataList) {
+			if (point.toString().equals(knn.predict(point, k))) {
+				edited.add(point);
+			}
+		}
+
+		return edited;
+	}
+
+	/**
+	 * Random mutation hill climbing. Starts from a random set of prototypes
+	 * and repeatedly swaps one prototype for a random point that is not in
+	 * the set, keeping the swap if the 1-NN accuracy of the full set against
+	 * the prototypes does not drop
+	 * @param size The number of prototypes to keep
+	 * @param iterations The number of mutations to try
+	 * @param seed The random seed
+	 * @return the selected list of data points
+	 * @throws IllegalArgumentException if the size is less than 1 or more
+	 * than the number of data points
+	 */
+	public ArrayList<DataPoint> hillClimb(int size, int iterations,
+			long seed) {
+
+		if (size < 1 || size > dataSize) {
+			throw new IllegalArgumentException("Number of prototypes must be "
+					+ "from 1 to " + dataSize + ": " + size);
+		}
+
+		Random random = new Random(seed);
+		ArrayList<DataPoint> shuffled = new ArrayList<DataPoint>(dataList);
+		Collections.shuffle(shuffled, random);
+
+		// prototypes at the front, the rest are the pool to swap from
+		ArrayList<DataPoint> prototypes =
+				new ArrayList<DataPoint>(shuffled.subList(0, size));
+		ArrayList<DataPoint> pool =
+				new ArrayList<DataPoint>(shuffled.subList(size, dataSize));
+		double bestScore =
+				new SimpleKNNClassifier(prototypes).classify(dataList, 1);
+
+		for (int i = 0; i < iterations && !pool.isEmpty(); i++) {
+
+			int p = random.nextInt(size);
+			int q = random.nextInt(pool.size());
+
+			// swap a prototype with a point from the pool
+			DataPoint removed = prototypes.set(p, pool.get(q));
+			pool.set(q, removed);
+
+			double score =
+					new SimpleKNNClassifier(prototypes).classify(dataList, 1);
+			if (score >= bestScore) {
+				bestScore = score;
+			} else { // undo the swap
+				pool.set(q, prototypes.set(p, removed));
+			}
+		}
+
+		return prototypes;
+	}
+
+	/**
+	 * Prints the size and accuracy of the reduced set against the full set.
+	 * The full set is scored with classify and the reduced set by
+	 * classifying every point of the full set against it
+	 * @param reduced The reduced list of data points
+	 * @param k The number of neighbours, K
+	 */
+	public void report(ArrayList<DataPoint> reduced, int k) {
+
+		double fullScore = new SimpleKNNClassifier(dataList).classify(k);
+		double reducedScore =
+				new SimpleKNNClassifier(reduced).classify(dataList, k);
+
+		System.out.println("[K = " + k + "] [" + reduced.size() + "/"
+				+ dataSize + " points] ["
+				+ Math.round((1 - (double) reduced.size() / dataSize) * 100)
+				+ "% smaller] [" + Math.round(reducedScore / dataSize * 100)
+				+ "% vs " + Math.round(fullScore / dataSize * 100) + "%]");
+
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * The QueryScratch class holds the buffers one thread reuses for every query,
+ * so that a search allocates nothing once the buffers are big enough. The
+ * nearest neighbours are kept in a bounded max-heap ordered by distance and
+ * then by position in the data, which gives the same order as a stable sort
+ */
+class QueryScratch {
+
+	double[] query = new double[0];
+	boolean[] queryPresent = new boolean[0];
+	int[] queryColumns = new int[0];
+	double[] queryValues = new double[0];
+	double[] distances = new double[0];
+	int[] positions = new int[0];
+	int[] categoryIds = new int[0];
+	double[] votes = new double[0];
+	double[] targets = new double[0];
+	String[] categories;
+	int count;
+	private int limit;
+
+	/**
+	 * Grows the buffers if needed and empties the heap. Only the category
+	 * names of the packed data are kept, so the buffers of a long-lived
+	 * thread don't hold on to the data of a classifier that is gone
+	 * @param data The packed data being searched
+	 * @param k The number of neighbours to keep
+	 */
+	void reset(PackedData data, int k) {
+
+		categories = data.categories;
+		if (query.length < data.numVariables) {
+			query = new double[data.numVariables];
+			queryPresent = new boolean[data.numVariables];
+			queryColumns = new int[data.numVariables];
+			queryValues = new double[data.numVariables];
+		}
+		if (distances.length < k) {
+			distances = new double[k];
+			positions = new int[k];
+			categoryIds = new int[k];
+			targets = new double[k];
+		}
+		if (votes.length < data.categories.length) {
+			votes = new double[data.categories.length];
+		}
+
+		limit = k;
+		count = 0;
+	}
+
+	/**
+	 * Returns whether the heap holds K neighbours already
+	 * @return true if the heap is full
+	 */
+	boolean isFull() {
+		return count == limit;
+	}
+
+	/**
+	 * Returns the distance of the furthest neighbour kept so far
+	 * @return the largest distance in the heap
+	 */
+	double worstDistance() {
+		return distances[0];
+	}
+
+	/**
+	 * Keeps the point at the given position if it is one of the K nearest so
+	 * far
+	 * @param distance The distance to the query
+	 * @param position The position of the point in the packed data
+	 */
+	void offer(double distance, int position) {
+
+		if (count < limit) {
+			int child = count++;
+			while (child > 0) { // sift up
+				int parent = (child - 1) / 2;
+				if (!isAfter(distance, position,
+						distances[parent], positions[parent])) {
+					break;
+				}
+				distances[child] = distances[parent];
+				positions[child] = positions[parent];
+				child = parent;
+			}
+			distances[child] = distance;
+			positions[child] = position;
+		} else if (limit > 0 && isAfter(distances[0], positions[0],
+				distance, position)) { // replace the furthest
+			siftDown(distance, position, count);
+		}
+
+	}
+
+	/**
+	 * Sorts the heap into ascending order and looks up the category and
+	 * target of each neighbour
+	 * @param data The packed data that was searched
+	 */
+	void sort(PackedData data) {
+
+		for (int end = count - 1; end > 0; end--) {
+			double distance = distances[end];
+			int position = positions[end];
+			distances[end] = distances[0];
+			positions[end] = positions[0];
+			siftDown(distance, position, end);
+		}
+
+		for (int n = 0; n < count; n++) {
+			categoryIds[n] = data.categoryIds[positions[n]];
+			targets[n] = data.targets[positions[n]];
+		}
+
+	}
+
+	/**
+	 * Places an entry at the top of the heap and moves it down into place
+	 */
+	private void siftDown(double distance, int position, int size) {
+
+		int slot = 0;
+		while (true) {
+			int child = 2 * slot + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && isAfter(distances[child + 1],
+					positions[child + 1], distances[child], positions[child])) {
+				child++;
+			}
+			if (!isAfter(distances[child], positions[child],
+					distance, position)) {
+				break;
+			}
+			distances[slot] = distances[child];
+			positions[slot] = positions[child];
+			slot = child;
+		}
+		distances[slot] = distance;
+		positions[slot] = position;
+
+	}
+
+	/**
+	 * Returns whether entry A comes after entry B, by distance and then by
+	 * position
+	 */
+	private static boolean isAfter(double distanceA, int positionA,
+			double distanceB, int positionB) {
+		return distanceA > distanceB
+				|| (distanceA == distanceB && positionA > positionB);
+	}
+
+}
@@ -0,0 +1,284 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The ShardCoordinator class splits the training data across a number of
+ * ShardServer processes. Each query is sent to every shard at once, the local
+ * K nearest neighbours that come back are merged, and the simple or weighted
+ * vote of the usual classifier picks the category
+ */
+public class ShardCoordinator {
+
+	private ArrayList<InetSocketAddress> addresses;
+	private ArrayList<Shard> shards;
+	private boolean weighted;
+	private DistanceMetric metric;
+	private KNNClassifier voter;
+	private ArrayList<String> categories;
+	private HashMap<String, Integer> categoryIds;
+	private ExecutorService pool;
+
+	/**
+	 * Shard is the connection to one server. Only one request can use a
+	 * connection at a time
+	 */
+	private static class Shard {
+
+		private Socket socket;
+		private DataInputStream in;
+		private DataOutputStream out;
+
+		Shard(InetSocketAddress address) throws IOException {
+			socket = new Socket(address.getAddress(), address.getPort());
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+	}
+
+	/**
+	 * Constructor for initialising variables
+	 * @param addresses The address of each shard server
+	 * @param weighted Whether votes are weighted by distance
+	 */
+	public ShardCoordinator(ArrayList<InetSocketAddress> addresses,
+			boolean weighted) {
+		this.addresses = addresses;
+		this.weighted = weighted;
+		metric = DistanceMetric.EUCLIDEAN;
+		shards = new ArrayList<Shard>();
+		categories = new ArrayList<String>();
+		categoryIds = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Sets the distance metric the shards use
+	 * @param metric The distance metric
+	 */
+	public void setDistanceMetric(DistanceMetric metric) {
+		this.metric = metric;
+	}
+
+	/**
+	 * Opens a connection to every shard
+	 * @throws IOException if a shard cannot be reached
+	 */
+	public void connect() throws IOException {
+
+		for (InetSocketAddress address : addresses) {
+			shards.add(new Shard(address));
+		}
+		pool = Executors.newFixedThreadPool(shards.size());
+
+	}
+
+	/**
+	 * Splits the data between the shards, dealing the points out in turn.
+	 * Each point is sent with its position in the list, which breaks ties
+	 * between equally distant neighbours as in a single process. The
+	 * coordinator keeps only the categories
+	 * @param dataList The list of data points
+	 * @throws IOException if a shard cannot be reached
+	 */
+	public void distribute(ArrayList<DataPoint> dataList) throws IOException {
+
+		// the vote only needs the neighbours, so one point will do
+		ArrayList<DataPoint> first =
+				new ArrayList<DataPoint>(dataList.subList(0, 1));
+		voter = weighted ? new WeightedKNNClassifier(first)
+				: new SimpleKNNClassifier(first);
+
+		// categories are sent as ids
+		for (DataPoint point : dataList) {
+			if (!categoryIds.containsKey(point.toString())) {
+				categoryIds.put(point.toString(), categories.size());
+				categories.add(point.toString());
+			}
+		}
+
+		int numShards = shards.size();
+		int numVariables = dataList.get(0).getNumVariables();
+
+		for (int s = 0; s < numShards; s++) {
+
+			int shardSize = (dataList.size() - s + numShards - 1) / numShards;
+			Shard shard = shards.get(s);
+
+			synchronized (shard) {
+
+				DataOutputStream out = shard.out;
+				out.writeByte(ShardServer.LOAD);
+				out.writeInt(numVariables);
+				out.writeInt(shardSize);
+				for (int i = s; i < dataList.size(); i += numShards) {
+					DataPoint point = dataList.get(i);
+					out.writeInt(point.getIndex());
+					out.writeInt(i);
+					out.writeInt(categoryIds.get(point.toString()));
+					writeValues(out, point);
+				}
+				out.flush();
+
+				if (shard.in.readByte() != ShardServer.OK) {
+					throw new IOException("Shard " + s + " failed to load");
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Predicts the category of a point from the merged neighbours of every
+	 * shard. The point is skipped by the shard holding it, if any. As in
+	 * KNNClassifier.predict, a K below 1 uses the nearest neighbour
+	 * @param point The data point
+	 * @param k The number of neighbours, K
+	 * @return the predicted category, or null if there are no neighbours
+	 * @throws IOException if a shard cannot be reached
+	 */
+	public String predict(final DataPoint point, int k) throws IOException {
+
+		final int numNeighbours = Math.max(k, 1);
+		final int searchSize = voter.getSearchSize(numNeighbours);
+
+		ArrayList<Future<ArrayList<DataPoint>>> futures =
+				new ArrayList<Future<ArrayList<DataPoint>>>();
+		for (final Shard shard : shards) {
+			futures.add(pool.submit(new Callable<ArrayList<DataPoint>>() {
+				@Override
+				public ArrayList<DataPoint> call() throws IOException {
+					return query(shard, point, searchSize);
+				}
+			}));
+		}
+
+		ArrayList<DataPoint> neighbours = new ArrayList<DataPoint>();
+		for (Future<ArrayList<DataPoint>> future : futures) {
+			try {
+				neighbours.addAll(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Query interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IOException("Shard query failed", e.getCause());
+			}
+		}
+
+		if (neighbours.isEmpty()) {
+			return null;
+		}
+
+		// the global K nearest, and the next one that sets the bandwidth, are
+		// among the local ones of each shard. Ties go to the earlier position
+		Collections.sort(neighbours, new Comparator<DataPoint>() {
+			@Override
+			public int compare(DataPoint a, DataPoint b) {
+				int order = a.compareTo(b);
+				return order != 0 ? order
+						: Integer.compare(a.getIndex(), b.getIndex());
+			}
+		});
+		return voter.predictCategory(neighbours,
+				Math.min(numNeighbours, neighbours.size()));
+	}
+
+	/**
+	 * This method classifies each of the given points across the shards
+	 * @param points The points to classify
+	 * @param k The number of neighbours, K
+	 * @return the score for the classification
+	 * @throws IOException if a shard cannot be reached
+	 */
+	public double classify(ArrayList<DataPoint> points, int k)
+			throws IOException {
+
+		double score = 0;
+
+		for (DataPoint point : points) {
+			if (point.toString().equals(predict(point, k))) {
+				score++;
+			}
+		}
+
+		return score;
+	}
+
+	/**
+	 * Closes the connection to every shard
+	 */
+	public void close() {
+
+		if (pool != null) {
+			pool.shutdown();
+		}
+
+		for (Shard shard : shards) {
+			try {
+				shard.socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		shards.clear();
+
+	}
+
+	/**
+	 * Asks one shard for its local K nearest neighbours. Each one comes back
+	 * as a point with only a distance and a category, whose index is its
+	 * position in the whole data set
+	 */
+	private ArrayList<DataPoint> query(Shard shard, DataPoint point, int k)
+			throws IOException {
+
+		ArrayList<DataPoint> neighbours = new ArrayList<DataPoint>(k);
+
+		synchronized (shard) {
+
+			DataOutputStream out = shard.out;
+			out.writeByte(ShardServer.QUERY);
+			out.writeInt(point.getIndex());
+			out.writeInt(k);
+			out.writeInt(metric.ordinal());
+			out.writeInt(point.getNumVariables());
+			writeValues(out, point);
+			out.flush();
+
+			int count = shard.in.readInt();
+			for (int n = 0; n < count; n++) {
+				DataPoint neighbour =
+						new DataPoint(new Double[0], shard.in.readInt());
+				neighbour.setRelativeDistance(shard.in.readDouble());
+				neighbour.setCategory(categories.get(shard.in.readInt()));
+				neighbours.add(neighbour);
+			}
+		}
+
+		return neighbours;
+	}
+
+	private void writeValues(DataOutputStream out, DataPoint point)
+			throws IOException {
+		for (int v = 0; v < point.getNumVariables(); v++) {
+			out.writeDouble(point.getValue(v));
+		}
+	}
+
+}
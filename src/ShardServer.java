@@ -0,0 +1,190 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+
+/**
+ * The ShardServer class holds one shard of the training data in its own
+ * process. The coordinator sends it the shard over a socket and then asks it
+ * for the local K nearest neighbours of each query, which come back as the
+ * position in the whole data set, distance and category id of each
+ * neighbour. Start one per port with
+ * java ShardServer &lt;port&gt;
+ */
+public class ShardServer {
+
+	static final byte LOAD = 1;
+	static final byte QUERY = 2;
+	static final byte OK = 0;
+
+	private int port;
+	private SimpleKNNClassifier knn;
+	private int[] positions;
+
+	/**
+	 * Constructor that takes in the port to listen on
+	 * @param port The port number
+	 */
+	public ShardServer(int port) {
+		this.port = port;
+	}
+
+	public static void main(String[] args) {
+
+		int port = Integer.parseInt(args[0]);
+		try {
+			new ShardServer(port).run();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	/**
+	 * Accepts connections until the process is stopped, serving each one on
+	 * its own thread
+	 * @throws IOException if the port cannot be opened
+	 */
+	public void run() throws IOException {
+
+		ServerSocket server = new ServerSocket(port);
+		System.out.println("Shard listening on port " + port);
+
+		try {
+			while (true) {
+				final Socket socket = server.accept();
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				}).start();
+			}
+		} finally {
+			server.close();
+		}
+
+	}
+
+	/**
+	 * Reads requests from one connection until it is closed
+	 */
+	private void serve(Socket socket) {
+
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+
+			while (true) {
+
+				byte command;
+				try {
+					command = in.readByte();
+				} catch (EOFException e) {
+					break; // the coordinator has gone
+				}
+
+				if (command == LOAD) {
+					load(in);
+					out.writeByte(OK);
+				} else if (command == QUERY) {
+					query(in, out);
+				} else {
+					throw new IOException("Unknown command " + command);
+				}
+				out.flush();
+			}
+
+			socket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	/**
+	 * Replaces the shard with the points sent by the coordinator. The
+	 * category of each point is stored as its category id, and its position
+	 * in the whole data set is kept to send back with it
+	 */
+	private void load(DataInputStream in) throws IOException {
+
+		int numVariables = in.readInt();
+		int size = in.readInt();
+		ArrayList<DataPoint> dataList = new ArrayList<DataPoint>(size);
+		int[] dataPositions = new int[size];
+
+		for (int i = 0; i < size; i++) {
+
+			int index = in.readInt();
+			dataPositions[i] = in.readInt();
+			int categoryId = in.readInt();
+			Double[] values = new Double[numVariables];
+			for (int v = 0; v < numVariables; v++) {
+				values[v] = in.readDouble();
+			}
+
+			DataPoint point = new DataPoint(values, index);
+			point.setCategory(Integer.toString(categoryId));
+			dataList.add(point);
+		}
+
+		synchronized (this) {
+			knn = new SimpleKNNClassifier(dataList);
+			positions = dataPositions;
+		}
+		System.out.println("Shard loaded " + size + " points");
+
+	}
+
+	/**
+	 * Sends back the local K nearest neighbours of a query point
+	 */
+	private void query(DataInputStream in, DataOutputStream out)
+			throws IOException {
+
+		int index = in.readInt();
+		int k = in.readInt();
+		DistanceMetric metric = DistanceMetric.values()[in.readInt()];
+		int numVariables = in.readInt();
+		Double[] values = new Double[numVariables];
+		for (int v = 0; v < numVariables; v++) {
+			values[v] = in.readDouble();
+		}
+		DataPoint point = new DataPoint(values, index);
+
+		SimpleKNNClassifier shard;
+		int[] shardPositions;
+		synchronized (this) {
+			shard = knn;
+			shardPositions = positions;
+			if (shard != null && shard.getDistanceMetric() != metric) {
+				shard.setDistanceMetric(metric);
+			}
+		}
+
+		if (shard == null) {
+			out.writeInt(0);
+			return;
+		}
+
+		QueryScratch neighbours = shard.findNearestNeighbours(point, k);
+		out.writeInt(neighbours.count);
+		for (int n = 0; n < neighbours.count; n++) {
+			out.writeInt(shardPositions[neighbours.positions[n]]);
+			out.writeDouble(neighbours.distances[n]);
+			out.writeInt(Integer.parseInt(
+					neighbours.categories[neighbours.categoryIds[n]]));
+		}
+
+	}
+
+}
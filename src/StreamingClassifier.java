@@ -0,0 +1,344 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The StreamingClassifier class classifies an unbounded stream of records
+ * without loading them all first. Each line is parsed, scaled with the
+ * statistics of the fitted DataScaler and collected into micro-batches that
+ * are classified on a worker pool. The classified points are published in
+ * input order with their category set to the prediction, as soon as their
+ * batch is done. Their index is negative, counting down from -1 and starting
+ * again after the most negative int, so that a record is never mistaken for
+ * a training point however long the stream is. Nothing is read until the
+ * processor has a subscriber, since points published to no one would be
+ * lost. A partial batch is sent off once the input has been idle for the
+ * maximum delay, so a trickling input is not held back. Only a bounded number
+ * of records is held at any time, so a slow subscriber slows down the
+ * reading of the input
+ */
+public class StreamingClassifier
+		implements Flow.Processor<String, DataPoint> {
+
+	private KNNClassifier classifier;
+	private DataScaler scaler;
+	private int numVariables;
+	private int k;
+	private int batchSize;
+	private int maxInFlight;
+	private long maxDelay;
+	private long lastRecord;
+	private ExecutorService pool;
+	private ScheduledExecutorService flusher;
+	private SubmissionPublisher<DataPoint> output;
+	private Flow.Subscription subscription;
+	private ArrayList<DataPoint> batch;
+	private ArrayDeque<Future<ArrayList<DataPoint>>> inFlight;
+	private long numRecords;
+	private long numSkipped;
+	private boolean started;
+	private boolean failed;
+
+	/**
+	 * Constructor for initialising variables, with a maximum delay of 100
+	 * milliseconds
+	 * @param classifier The classifier fitted to the training data
+	 * @param scaler The scaler fitted to the training data
+	 * @param k The number of neighbours, K
+	 * @param batchSize The number of records classified together
+	 * @param numThreads The number of worker threads
+	 */
+	public StreamingClassifier(KNNClassifier classifier, DataScaler scaler,
+			int k, int batchSize, int numThreads) {
+		this(classifier, scaler, k, batchSize, numThreads, 100);
+	}
+
+	/**
+	 * Constructor for initialising variables
+	 * @param classifier The classifier fitted to the training data
+	 * @param scaler The scaler fitted to the training data
+	 * @param k The number of neighbours, K
+	 * @param batchSize The number of records classified together
+	 * @param numThreads The number of worker threads
+	 * @param maxDelay How long in milliseconds the input may be idle before
+	 * a partial batch is classified, and how often finished batches are
+	 * checked for
+	 */
+	public StreamingClassifier(KNNClassifier classifier, DataScaler scaler,
+			int k, int batchSize, int numThreads, long maxDelay) {
+
+		this.classifier = classifier;
+		this.scaler = scaler;
+		this.k = k;
+		this.batchSize = batchSize;
+		this.maxDelay = maxDelay;
+		numVariables = scaler.getNumVariables();
+		maxInFlight = numThreads * 2; // keep every worker busy
+		pool = Executors.newFixedThreadPool(numThreads);
+		flusher = Executors.newSingleThreadScheduledExecutor();
+		output = new SubmissionPublisher<DataPoint>();
+		batch = new ArrayList<DataPoint>(batchSize);
+		inFlight = new ArrayDeque<Future<ArrayList<DataPoint>>>();
+
+	}
+
+	/**
+	 * Publishes the lines of an input stream, such as a file or System.in.
+	 * Reading starts on a new thread once the subscriber has subscribed and
+	 * waits while the subscriber is behind
+	 * @param in The input stream
+	 * @param skipHeader Whether the first line is a header
+	 * @return the publisher of lines, for a single subscriber
+	 */
+	public static Flow.Publisher<String> readLines(final InputStream in,
+			final boolean skipHeader) {
+
+		final SubmissionPublisher<String> lines =
+				new SubmissionPublisher<String>();
+
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					BufferedReader reader =
+							new BufferedReader(new InputStreamReader(in));
+					String line = null;
+					if (skipHeader) {
+						reader.readLine();
+					}
+					while ((line = reader.readLine()) != null) {
+						lines.submit(line); // blocks if the buffer is full
+					}
+					reader.close();
+					lines.close();
+				} catch (IOException e) {
+					lines.closeExceptionally(e);
+				}
+			}
+		});
+
+		// lines submitted before anyone subscribes would be dropped
+		return new Flow.Publisher<String>() {
+			@Override
+			public void subscribe(Flow.Subscriber<? super String> subscriber) {
+				lines.subscribe(subscriber);
+				reader.start();
+			}
+		};
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super DataPoint> subscriber) {
+		output.subscribe(subscriber);
+		start();
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+
+		synchronized (this) {
+			this.subscription = subscription;
+		}
+		start();
+
+	}
+
+	@Override
+	public synchronized void onNext(String line) {
+
+		if (failed) {
+			return;
+		}
+		lastRecord = System.nanoTime();
+
+		String[] dim = line.trim().split("\\s+");
+		if (dim.length > 0 && !dim[0].isEmpty()) {
+
+			try {
+				ArrayList<Double> values =
+						DataReader.parseValues(dim, numVariables);
+				// negative so it can't match a training point's index
+				int index = -1 - (int) (numRecords % Integer.MAX_VALUE);
+				batch.add(scaler.scaleValues(values, index));
+			} catch (NumberFormatException e) {
+				numSkipped++; // a bad record shouldn't stop the stream
+			}
+			numRecords++;
+		}
+
+		try {
+			if (batch.size() == batchSize) {
+				dispatch();
+			}
+			emitFinished();
+		} catch (IllegalStateException e) {
+			subscription.cancel();
+			onError(e);
+			return;
+		}
+
+		subscription.request(1);
+	}
+
+	@Override
+	public synchronized void onError(Throwable throwable) {
+		failed = true;
+		flusher.shutdownNow();
+		pool.shutdownNow();
+		output.closeExceptionally(throwable);
+	}
+
+	@Override
+	public synchronized void onComplete() {
+
+		if (failed) {
+			return;
+		}
+		flusher.shutdown();
+
+		try {
+			if (!batch.isEmpty()) {
+				dispatch();
+			}
+			while (!inFlight.isEmpty()) {
+				emit(inFlight.poll());
+			}
+			output.close();
+			pool.shutdown();
+		} catch (IllegalStateException e) {
+			onError(e);
+		}
+
+	}
+
+	/**
+	 * Returns the number of records read so far
+	 * @return the number of records
+	 */
+	public long getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Returns the number of records that could not be parsed
+	 * @return the number of skipped records
+	 */
+	public long getNumSkipped() {
+		return numSkipped;
+	}
+
+	/**
+	 * Starts reading the input and the flush timer once there is both an
+	 * input and a subscriber to the output
+	 */
+	private synchronized void start() {
+
+		if (started || failed || subscription == null
+				|| !output.hasSubscribers()) {
+			return;
+		}
+		started = true;
+
+		lastRecord = System.nanoTime();
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, maxDelay, maxDelay, TimeUnit.MILLISECONDS);
+		subscription.request(batchSize);
+
+	}
+
+	/**
+	 * Sends a partial batch to the pool once the input has been idle for the
+	 * maximum delay, and publishes any batches that are done
+	 */
+	private synchronized void flush() {
+
+		if (failed) {
+			return;
+		}
+
+		try {
+			long idle = System.nanoTime() - lastRecord;
+			if (!batch.isEmpty()
+					&& idle >= TimeUnit.MILLISECONDS.toNanos(maxDelay)) {
+				dispatch();
+			}
+			emitFinished();
+		} catch (IllegalStateException e) {
+			subscription.cancel();
+			onError(e);
+		}
+
+	}
+
+	/**
+	 * Publishes the batches at the head of the queue that are done, stopping
+	 * at the first that isn't so the output stays in input order
+	 */
+	private void emitFinished() {
+		while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+			emit(inFlight.poll());
+		}
+	}
+
+	/**
+	 * Sends the current batch to the pool, waiting for the oldest batch to be
+	 * published first if too many are in flight
+	 */
+	private void dispatch() {
+
+		final ArrayList<DataPoint> points = batch;
+		batch = new ArrayList<DataPoint>(batchSize);
+
+		inFlight.add(pool.submit(new Callable<ArrayList<DataPoint>>() {
+			@Override
+			public ArrayList<DataPoint> call() {
+				for (DataPoint point : points) {
+					point.setCategory(classifier.predict(point, k));
+				}
+				return points;
+			}
+		}));
+
+		while (inFlight.size() > maxInFlight) {
+			emit(inFlight.poll());
+		}
+
+	}
+
+	/**
+	 * Waits for a batch and publishes its points. Publishing waits while the
+	 * subscriber is behind
+	 */
+	private void emit(Future<ArrayList<DataPoint>> future) {
+
+		try {
+			for (DataPoint point : future.get()) {
+				output.submit(point);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Stream interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Classification failed",
+					e.getCause());
+		}
+
+	}
+
+}
@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * The SyntheticData class generates data sets from a mixture of Gaussians,
+ * one per category, so that the classifiers can be measured without a data
+ * file. The same seed always gives the same data
+ */
+public class SyntheticData {
+
+	private int numVariables;
+	private int numCategories;
+	private double separation;
+	private long seed;
+
+	/**
+	 * Constructor for initialising variables
+	 * @param numVariables The number of dimensions, d
+	 * @param numCategories The number of categories
+	 * @param separation The standard deviation of the category centres, in
+	 * units of the standard deviation of the points around them
+	 * @param seed The random seed
+	 */
+	public SyntheticData(int numVariables, int numCategories,
+			double separation, long seed) {
+		this.numVariables = numVariables;
+		this.numCategories = numCategories;
+		this.separation = separation;
+		this.seed = seed;
+	}
+
+	/**
+	 * Generates a scaled data set. Each point is drawn around the centre of
+	 * a random category and has that category's name, c0, c1 and so on, and
+	 * the category's number as its target
+	 * @param size The number of points, N
+	 * @return the list of scaled data points
+	 */
+	public ArrayList<DataPoint> generate(int size) {
+
+		Random random = new Random(seed);
+
+		// the centre of each category
+		double[][] centres = new double[numCategories][numVariables];
+		for (int c = 0; c < numCategories; c++) {
+			for (int v = 0; v < numVariables; v++) {
+				centres[c][v] = random.nextGaussian() * separation;
+			}
+		}
+
+		ArrayList<ArrayList<Double>> rawData =
+				new ArrayList<ArrayList<Double>>(size);
+		int[] categories = new int[size];
+		for (int i = 0; i < size; i++) {
+			int c = random.nextInt(numCategories);
+			ArrayList<Double> values = new ArrayList<Double>(numVariables);
+			for (int v = 0; v < numVariables; v++) {
+				values.add(centres[c][v] + random.nextGaussian());
+			}
+			rawData.add(values);
+			categories[i] = c;
+		}
+
+		// scale the points the same way as data read from a file
+		ArrayList<DataPoint> dataPoints =
+				new DataScaler(numVariables).scaleData(rawData);
+		for (int i = 0; i < size; i++) {
+			dataPoints.get(i).setCategory("c" + categories[i]);
+			dataPoints.get(i).setTarget(categories[i]);
+		}
+
+		return dataPoints;
+	}
+
+}
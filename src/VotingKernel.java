@@ -0,0 +1,84 @@
+/**
+ * The VotingKernel enum lists the ways a neighbour's vote can be weighted by
+ * its distance or rank. The bandwidth is the distance of the (K+1)th nearest
+ * neighbour, so that the Kth still gets a vote
+ */
+public enum VotingKernel {
+
+	/** every neighbour counts the same */
+	UNIFORM,
+
+	/** 1 / distance */
+	INVERSE,
+
+	/** 1 / distance squared */
+	INVERSE_SQUARE,
+
+	/** exp(-u^2 / 2) where u is distance / bandwidth */
+	GAUSSIAN,
+
+	/** 1 - u^2 where u is distance / bandwidth */
+	EPANECHNIKOV,
+
+	/** K - rank, so the nearest counts K times as much as the furthest */
+	RANK;
+
+	/**
+	 * Distances below this are treated as exact matches
+	 */
+	static final double EXACT_DISTANCE = 1e-10;
+
+	/**
+	 * Returns the weight of a neighbour's vote
+	 * @param distance The distance to the neighbour
+	 * @param rank The position of the neighbour, 0 for the nearest
+	 * @param k The number of neighbours, K
+	 * @param bandwidth The distance of the (K+1)th neighbour
+	 * @return the weight
+	 */
+	public double weight(double distance, int rank, int k, double bandwidth) {
+
+		switch (this) {
+			case INVERSE:
+				return 1 / Math.max(distance, EXACT_DISTANCE);
+			case INVERSE_SQUARE:
+				double d = Math.max(distance, EXACT_DISTANCE);
+				return 1 / (d * d);
+			case GAUSSIAN:
+				if (bandwidth <= 0) {
+					return 1.0;
+				}
+				double u = distance / bandwidth;
+				return Math.exp(-u * u / 2);
+			case EPANECHNIKOV:
+				if (bandwidth <= 0) {
+					return 1.0;
+				}
+				double v = distance / bandwidth;
+				return Math.max(0.0, 1 - v * v);
+			case RANK:
+				return k - rank;
+			default:
+				return 1.0;
+		}
+	}
+
+	/**
+	 * Returns whether the weight depends on the bandwidth, in which case the
+	 * neighbour after the Kth is needed to set it
+	 * @return true for the Gaussian and Epanechnikov kernels
+	 */
+	public boolean usesBandwidth() {
+		return this == GAUSSIAN || this == EPANECHNIKOV;
+	}
+
+	/**
+	 * Returns whether the weight grows without limit as the distance goes to
+	 * zero, in which case exact matches outvote everything else
+	 * @return true for the inverse kernels
+	 */
+	public boolean isSingular() {
+		return this == INVERSE || this == INVERSE_SQUARE;
+	}
+
+}